@@ -0,0 +1,45 @@
+package rxcanvas.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rxcanvas.client.CompactStrokeCodec;
+import rxcanvas.client.Stroke;
+
+/** Compact codec round trip of the strokes of a drag, the JSON codec needs a browser. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class CodecBenchmark {
+    @Param("1000") int points;
+    @Param({ "false", "true" }) boolean smooth;
+    // compact messages only, so no fallback
+    final CompactStrokeCodec codec = new CompactStrokeCodec(Traces.PALETTE, null);
+    List<Stroke> strokes;
+    String message;
+
+    @Setup public void setup() {
+        strokes = Traces.strokes(Traces.drags(points), smooth ? 0.75 : 0, smooth);
+        message = codec.encode(strokes);
+    }
+
+    @Benchmark public String encode() { return codec.encode(strokes); }
+
+    @Benchmark public List<Stroke> decode() { return codec.decode(message); }
+
+    @Benchmark public int cost() {
+        int cost = 0;
+        for (Stroke stroke : strokes) cost += codec.cost(stroke);
+        return cost;
+    }
+}
@@ -0,0 +1,89 @@
+package rxcanvas.bench;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static rxcanvas.client.RxBatch.batch;
+import static rxcanvas.client.Segment.segments;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.TestScheduler;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rxcanvas.client.Brush;
+import rxcanvas.client.CompactStrokeCodec;
+import rxcanvas.client.Scene;
+import rxcanvas.client.Stroke;
+import rxcanvas.client.Trace;
+
+/**
+ * Replays a drag through the same Rx graph as the app, without the browser: the sender turns the samples into
+ * segments, strokes, batches and messages, and the receiver decodes the messages into its scene. The replay keeps
+ * the trace timing in virtual time, so the batches are cut by the time window like in the app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class PipelineBenchmark {
+    // as in RxCanvas
+    static final long BATCH_WINDOW_MS = 40;
+    static final int BATCH_MAX_CHARS = 60_000;
+
+    @Param("10000") int points;
+    @Param({ "0", "0.75" }) double tolerance;
+    final CompactStrokeCodec codec = new CompactStrokeCodec(Traces.PALETTE, null);
+    List<Trace.Event> events;
+    double[][] drags;
+    List<String> messages;
+
+    @Setup public void setup() {
+        events = Traces.events(points);
+        drags = Traces.drags(points);
+        messages = send().toList().blockingGet();
+    }
+
+    /** The batches are cut by the budget, the window is timed in virtual time that doesn't advance while sending. */
+    Observable<String> send() {
+        TestScheduler scheduler = new TestScheduler();
+        return Traces.segments(drags, tolerance, tolerance > 0)
+                .map(segment -> Traces.stroke(Traces.PALETTE.get(0), segment.toLine()))
+                .compose(batch(BATCH_WINDOW_MS, MILLISECONDS, BATCH_MAX_CHARS, codec::cost, scheduler))
+                .map(codec::encode);
+    }
+
+    @Benchmark public void sender(Blackhole bh) {
+        send().blockingSubscribe(bh::consume);
+    }
+
+    @Benchmark public void replay(Blackhole bh) {
+        TestScheduler scheduler = new TestScheduler();
+        Trace.replay(events, 1, scheduler).compose(Trace.drags())
+                .flatMap(drag -> {
+                    // the width follows the pressure or the speed, like the app
+                    Brush ink = new Brush();
+                    return drag.compose(segments(e -> e.x, e -> e.y, e -> ink.width(e.x, e.y, e.time, e.pressure),
+                            tolerance, tolerance > 0));
+                })
+                .map(segment -> Traces.stroke(Traces.PALETTE.get(0), segment.toLine(), segment.toWidths()))
+                .compose(batch(BATCH_WINDOW_MS, MILLISECONDS, BATCH_MAX_CHARS, codec::cost, scheduler))
+                .map(codec::encode)
+                .subscribe(bh::consume);
+        scheduler.advanceTimeBy(events.get(events.size() - 1).time + BATCH_WINDOW_MS, MILLISECONDS);
+    }
+
+    @Benchmark public Scene receiver() {
+        Scene scene = new Scene();
+        for (String message : messages) for (Stroke stroke : codec.decode(message)) scene.add(stroke);
+        return scene;
+    }
+}
@@ -0,0 +1,56 @@
+package rxcanvas.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rxcanvas.client.Scene;
+import rxcanvas.client.Stroke;
+
+/** Retained scene operations over the strokes of a long drag. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class SceneBenchmark {
+    @Param("10000") int points;
+    List<Stroke> strokes;
+    Scene scene;
+
+    @Setup public void setup() {
+        strokes = Traces.strokes(Traces.drags(points), 0, false);
+        scene = add();
+    }
+
+    @Benchmark public Scene add() {
+        Scene out = new Scene();
+        for (Stroke stroke : strokes) out.add(stroke);
+        return out;
+    }
+
+    /** Hit tests along the drag, like the catch up dedup does for each stroke received. */
+    @Benchmark public int contains() {
+        int hits = 0;
+        for (int i = 0; i < strokes.size(); i += 10) if (scene.contains(strokes.get(i), 0.25)) hits++;
+        return hits;
+    }
+
+    /** Erases along the drag, so every erase hits, on a fresh copy of the scene. */
+    @Benchmark public int erase() {
+        Scene copy = add();
+        int hits = 0;
+        for (int i = 0; i < strokes.size(); i += 10) {
+            double[] p = strokes.get(i).line[1];
+            if (copy.erase(p[0], p[1], 5) != null) hits++;
+        }
+        return hits;
+    }
+}
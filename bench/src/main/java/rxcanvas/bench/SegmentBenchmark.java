@@ -0,0 +1,45 @@
+package rxcanvas.bench;
+
+import io.reactivex.Observable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Windowing the drag points into segments, a drag at a time, over a trace of {@code points} samples. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class SegmentBenchmark {
+    @Param("1000") int points;
+    double[][] drags;
+
+    @Setup public void setup() { drags = Traces.drags(points); }
+
+    /** The original {@code map(toPoint).buffer(3, 1)}, a point array and a list per event. */
+    @Benchmark public void buffer(Blackhole bh) {
+        Observable.fromArray(drags).concatMap(drag -> Observable.range(0, drag.length / 2)
+                .map(i -> new double[] { drag[i * 2], drag[i * 2 + 1] })
+                .buffer(3, 1).filter(window -> window.size() == 3))
+                .subscribe(window -> bh.consume(window.toArray(new double[0][])));
+    }
+
+    @Benchmark public void window(Blackhole bh) {
+        Traces.segments(drags, 0, false)
+                .subscribe(segment -> bh.consume(segment.toLine()));
+    }
+
+    @Benchmark public void simplified(Blackhole bh) {
+        Traces.segments(drags, 0.75, true)
+                .subscribe(segment -> bh.consume(segment.toLine()));
+    }
+}
@@ -0,0 +1,117 @@
+package rxcanvas.bench;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.TestScheduler;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import rxcanvas.client.Segment;
+import rxcanvas.client.Stroke;
+import rxcanvas.client.Trace;
+
+/**
+ * Drag traces, as {@link Trace} events or as a flat {x0, y0, x1, y1...} array of samples per drag. Use
+ * '-jvmArgs -Drxcanvas.trace=drag.txt' to replay a trace recorded with '?record=true' instead of the synthetic one.
+ */
+final class Traces {
+    static final List<String> PALETTE = List.of("#828b20", "#b0ac31", "#cbc53d", "#fad779");
+
+    private Traces() {}
+
+    static List<Trace.Event> events(int points) {
+        String file = System.getProperty("rxcanvas.trace");
+        if (file == null) return scribble(points, 42);
+        try {
+            return Trace.parse(String.join("\n", Files.readAllLines(Paths.get(file))));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot read trace " + file, e);
+        }
+    }
+
+    /** The samples of each drag, in the order the drags start. */
+    static double[][] drags(int points) {
+        Map<Integer, double[]> drags = new LinkedHashMap<>();
+        Map<Integer, Integer> sizes = new HashMap<>();
+        for (Trace.Event e : events(points)) {
+            if (e.type == Trace.DOWN) {
+                drags.put(e.id, new double[64]);
+                sizes.put(e.id, 0);
+            } else if (e.type == Trace.MOVE && drags.containsKey(e.id)) {
+                double[] drag = drags.get(e.id);
+                int n = sizes.get(e.id);
+                if (n + 2 > drag.length) drags.put(e.id, drag = Arrays.copyOf(drag, drag.length * 2));
+                drag[n++] = e.x;
+                drag[n++] = e.y;
+                sizes.put(e.id, n);
+            }
+        }
+        return drags.entrySet().stream().map(drag -> Arrays.copyOf(drag.getValue(), sizes.get(drag.getKey())))
+                .toArray(double[][]::new);
+    }
+
+    /** The segments of the drags, each drag windowed on its own like the app does with {@link Trace#drags()}. */
+    static Observable<Segment> segments(double[][] drags, double tolerance, boolean smooth) {
+        return Observable.fromArray(drags).concatMap(drag -> Observable.range(0, drag.length / 2)
+                .compose(Segment.segments(i -> drag[i * 2], i -> drag[i * 2 + 1], tolerance, smooth)));
+    }
+
+    /**
+     * A hand like scribble, a sample every 2px and 4ms with a slowly changing direction and some sensor jitter,
+     * split in drags of 500 samples.
+     */
+    static List<Trace.Event> scribble(int points, long seed) {
+        Random random = new Random(seed);
+        TestScheduler clock = new TestScheduler();
+        Trace trace = new Trace(clock);
+        trace.options(PALETTE.get(0), 12);
+        double x = 500, y = 500, angle = 0, turn = 0;
+        int drag = -1;
+        for (int i = 0; i < points; i++) {
+            if (i % 500 == 0) {
+                if (drag >= 0) trace.up(drag);
+                clock.advanceTimeBy(200, MILLISECONDS);
+                drag = trace.down();
+            }
+            turn = turn * 0.9 + (random.nextDouble() - 0.5) * 0.2;
+            angle += turn;
+            x += Math.cos(angle) * 2 + random.nextGaussian() * 0.2;
+            y += Math.sin(angle) * 2 + random.nextGaussian() * 0.2;
+            clock.advanceTimeBy(4, MILLISECONDS);
+            trace.move(drag, x, y);
+        }
+        if (drag >= 0) trace.up(drag);
+        return Trace.parse(trace.export());
+    }
+
+    /** The strokes painted for the drags, like the app does. */
+    static List<Stroke> strokes(double[][] drags, double tolerance, boolean smooth) {
+        List<Stroke> out = new ArrayList<>();
+        segments(drags, tolerance, smooth).subscribe(segment ->
+                out.add(stroke(PALETTE.get(out.size() / 64 % PALETTE.size()), segment.toLine())));
+        return out;
+    }
+
+    static Stroke stroke(String color, double[][] line) {
+        Stroke out = new Stroke();
+        out.color = color;
+        out.stroke = 12.;
+        out.line = line;
+        return out;
+    }
+
+    /** The stroke with a width profile, the widths as factors of the stroke width, if not null. */
+    static Stroke stroke(String color, double[][] line, double[] widths) {
+        Stroke out = stroke(color, line);
+        if (widths != null) out.widths = new double[] { out.stroke * widths[0], out.stroke * widths[1] };
+        return out;
+    }
+}
@@ -0,0 +1,53 @@
+package rxcanvas.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Own strokes come back quantized by the compact codec, in the catch-up replies and relayed while the sender doesn't
+ * know its id yet, and the scene must still recognize them or they are painted (and pushed) twice.
+ */
+public class SceneTest {
+    static final double TOLERANCE = 1. / CompactStrokeCodec.QUANTUM; // as CastSync
+    static final String COLOR = "#828b20";
+
+    final CompactStrokeCodec codec = new CompactStrokeCodec(List.of(COLOR), null);
+
+    @Test public void findsStrokesRoundTripped() {
+        Scene scene = new Scene();
+        Stroke local = stroke(23.456789, 10.123, 20.987);
+        int id = scene.add(local);
+
+        Stroke back = codec.decode(codec.encode(List.of(local))).get(0);
+        assertNotEquals(local.stroke, back.stroke); // the width is quantized too
+        assertTrue(scene.contains(back, TOLERANCE));
+        assertEquals(id, scene.find(back, TOLERANCE));
+    }
+
+    @Test public void recognizesOwnRelayedStrokes() {
+        // like CastRelay.listen until the sync reply tells the sender id, the own strokes are skipped
+        Scene scene = new Scene();
+        List<Stroke> drawn = List.of(stroke(12.3456, 100.111, 50.222), stroke(33.3333, 300.777, 80.888));
+        for (Stroke stroke : drawn) scene.add(stroke);
+        for (Stroke stroke : codec.decode(codec.encode(drawn))) assertTrue(scene.contains(stroke, TOLERANCE));
+    }
+
+    @Test public void ignoresOtherWidths() {
+        Scene scene = new Scene();
+        scene.add(stroke(23.456789, 10.123, 20.987));
+        assertFalse(scene.contains(stroke(24, 10.123, 20.987), TOLERANCE));
+    }
+
+    static Stroke stroke(double width, double x, double y) {
+        Stroke out = new Stroke();
+        out.color = COLOR;
+        out.stroke = width;
+        out.line = new double[][] { { x, y }, { x + 20.333, y + 19.111 }, { x + 40.777, y + 40.001 } };
+        return out;
+    }
+}
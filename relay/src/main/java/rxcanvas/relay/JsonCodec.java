@@ -0,0 +1,107 @@
+package rxcanvas.relay;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import rxcanvas.client.Stroke;
+import rxcanvas.client.StrokeCodec;
+
+/**
+ * Decoder of the JSON stroke messages ({@code JsonStrokeCodec}) of the pages using '?codec=json', the fallback of the
+ * compact codec. The relay only replies in the compact format, so it doesn't encode.
+ */
+class JsonCodec implements StrokeCodec {
+    private String json;
+    private int pos;
+
+    @Override public String encode(List<Stroke> strokes) { throw new UnsupportedOperationException(); }
+
+    /** Messages are either a single stroke or, since batching, an array of strokes. */
+    @Override public synchronized List<Stroke> decode(String message) {
+        json = message;
+        pos = 0;
+        Object value = value();
+        List<Stroke> out = new ArrayList<>();
+        if (value instanceof List) for (Object item : (List<?>) value) out.add(stroke((Map<?, ?>) item));
+        else out.add(stroke((Map<?, ?>) value));
+        return out;
+    }
+
+    @Override public int cost(Stroke stroke) { throw new UnsupportedOperationException(); }
+
+    private static Stroke stroke(Map<?, ?> json) {
+        Stroke stroke = new Stroke();
+        stroke.color = (String) json.get("color");
+        stroke.stroke = (Double) json.get("stroke");
+        List<?> line = (List<?>) json.get("line");
+        stroke.line = new double[line.size()][];
+        for (int i = 0; i < line.size(); i++) stroke.line[i] = doubles(line.get(i));
+        stroke.widths = json.get("widths") == null ? null : doubles(json.get("widths"));
+        stroke.undo = (Boolean) json.get("undo");
+        return stroke;
+    }
+
+    private static double[] doubles(Object json) {
+        List<?> list = (List<?>) json;
+        double[] out = new double[list.size()];
+        for (int i = 0; i < out.length; i++) out[i] = (Double) list.get(i);
+        return out;
+    }
+
+    /** Objects, arrays, strings without escapes, numbers, booleans and null, all a stroke needs. */
+    private Object value() {
+        char c = next();
+        if (c == '{') {
+            Map<String, Object> out = new LinkedHashMap<>();
+            if (peek() == '}') { pos++; return out; }
+            do {
+                next();
+                String key = string();
+                if (next() != ':') throw error();
+                out.put(key, value());
+            } while (next() == ',');
+            if (json.charAt(pos - 1) != '}') throw error();
+            return out;
+        } else if (c == '[') {
+            List<Object> out = new ArrayList<>();
+            if (peek() == ']') { pos++; return out; }
+            do out.add(value()); while (next() == ',');
+            if (json.charAt(pos - 1) != ']') throw error();
+            return out;
+        } else if (c == '"') {
+            return string();
+        } else {
+            int start = pos - 1;
+            while (pos < json.length() && ",]} \t\r\n".indexOf(json.charAt(pos)) < 0) pos++;
+            String literal = json.substring(start, pos);
+            if (literal.equals("null")) return null;
+            if (literal.equals("true") || literal.equals("false")) return Boolean.valueOf(literal);
+            return Double.valueOf(literal);
+        }
+    }
+
+    private String string() {
+        int end = json.indexOf('"', pos);
+        if (end < 0) throw error();
+        String out = json.substring(pos, end);
+        pos = end + 1;
+        return out;
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private char peek() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+        if (pos == json.length()) throw error();
+        return json.charAt(pos);
+    }
+
+    private IllegalArgumentException error() {
+        return new IllegalArgumentException("invalid stroke json at " + pos);
+    }
+}
@@ -0,0 +1,185 @@
+package rxcanvas.relay;
+
+import static java.lang.Boolean.TRUE;
+import static java.util.Arrays.asList;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import rxcanvas.client.CompactStrokeCodec;
+import rxcanvas.client.Scene;
+import rxcanvas.client.Stroke;
+import rxcanvas.client.StrokeCodec;
+
+/**
+ * Shares the canvas between the pages connected with '?ws=ws://host:8765', playing the role of a cast receiver in
+ * relay mode ({@code CastRelay}). Strokes are applied to the scene and queued per sender in arrival order, each flush
+ * relays at most a quota from each queue to all the pages, so all of them see the same order and one fast page can't
+ * starve the others, and a queue beyond its capacity drops its oldest strokes. A page joining or reconnecting says
+ * hello like to a receiver ({@code CastSync}) and gets the segments added since the sequence it knows, or the whole
+ * scene if it doesn't know this server instance. The scene only keeps the live segments, beyond its limit the oldest
+ * are dropped and a new epoch starts, so the pages resync fully on their next hello.
+ */
+public class RelayServer extends WebSocketServer {
+    // keep in sync with RxCanvas, CastSync, CastRelay and RxWebSocket
+    static final String STROKE_CHANNEL = "urn:x-cast:com.intendia.rxcanvas-gwt";
+    static final String SYNC_CHANNEL = STROKE_CHANNEL + ".sync";
+    static final String ACK = "ack";
+    static final List<String> COLORS = asList("#828b20", "#b0ac31", "#cbc53d", "#fad779",
+            "#f9e4ad", "#faf2db", "#563512", "#9b4a0b", "#d36600", "#fe8a00", "#f9a71f");
+    static final double TOLERANCE = 1. / 4;
+    static final int QUOTA = 200, CAPACITY = 2_000;
+    static final long RELAY_WINDOW_MS = 50;
+    static final int LIMIT = 500_000;
+    private static final Pattern EPOCH = Pattern.compile("\"epoch\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern SEQ = Pattern.compile("\"seq\"\\s*:\\s*(-?\\d+)");
+
+    private final StrokeCodec codec = new CompactStrokeCodec(COLORS, new JsonCodec());
+    private final Random random = new Random();
+    private final Map<WebSocket, String> pages = new LinkedHashMap<>(); // connection to its sender id
+    private final Map<String, ArrayDeque<Stroke>> queues = new LinkedHashMap<>();
+    private String epoch = newEpoch();
+    private Scene scene = new Scene();
+    private int connections;
+
+    public RelayServer(InetSocketAddress address) { super(address); }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8765;
+        RelayServer server = new RelayServer(new InetSocketAddress(port));
+        server.setReuseAddr(true);
+        server.start();
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+        flusher.scheduleWithFixedDelay(server::flush, RELAY_WINDOW_MS, RELAY_WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override public void onStart() {
+        System.out.println("Relaying on ws://localhost:" + getPort() + " (epoch " + epoch + ")");
+    }
+
+    @Override public synchronized void onOpen(WebSocket page, ClientHandshake handshake) {
+        pages.put(page, "ws-" + connections++);
+    }
+
+    @Override public synchronized void onClose(WebSocket page, int code, String reason, boolean remote) {
+        pages.remove(page);
+    }
+
+    @Override public synchronized void onError(WebSocket page, Exception err) {
+        System.err.println("relay error " + (page == null ? "" : pages.get(page)) + ": " + err);
+    }
+
+    /** A frame is a header line, the namespace and the id to acknowledge, and the message. */
+    @Override public synchronized void onMessage(WebSocket page, String frame) {
+        String self = pages.get(page);
+        int eol = frame.indexOf('\n'), space = frame.indexOf(' ');
+        if (self == null || eol < 0 || space < 0 || space > eol) return;
+        String namespace = frame.substring(0, space), id = frame.substring(space + 1, eol);
+        String message = frame.substring(eol + 1);
+        if (STROKE_CHANNEL.equals(namespace)) {
+            List<Stroke> strokes;
+            try {
+                strokes = codec.decode(message);
+            } catch (RuntimeException err) {
+                System.err.println("relay dropped a message from " + self + ": " + err);
+                strokes = List.of();
+            }
+            for (Stroke stroke : strokes) apply(stroke);
+            ArrayDeque<Stroke> queue = queues.computeIfAbsent(self, k -> new ArrayDeque<>());
+            queue.addAll(strokes);
+            while (queue.size() > CAPACITY) queue.removeFirst();
+        } else if (SYNC_CHANNEL.equals(namespace)) {
+            for (String reply : replies(message, self)) page.send(SYNC_CHANNEL + "\n" + reply);
+        }
+        page.send(ACK + " " + id + "\n");
+    }
+
+    /** Paints the stroke or, if it is an undo, removes the segment it matches, like the receiver drawing. */
+    private void apply(Stroke stroke) {
+        if (!TRUE.equals(stroke.undo)) {
+            scene.add(stroke);
+        } else {
+            int id = scene.find(stroke, TOLERANCE);
+            if (id >= 0) scene.remove(id);
+        }
+        if (scene.size() > 2 * scene.live() + QUOTA) scene.compact();
+        if (scene.live() > LIMIT) {
+            List<Stroke> kept = scene.strokes();
+            scene = new Scene();
+            for (Stroke s : kept.subList(kept.size() - LIMIT / 2, kept.size())) scene.add(s);
+            epoch = newEpoch();
+        }
+    }
+
+    /** Relays up to the quota of each sender to all the pages, in one frame. */
+    synchronized void flush() {
+        List<String> origins = new ArrayList<>(), chunks = new ArrayList<>();
+        Iterator<Map.Entry<String, ArrayDeque<Stroke>>> it = queues.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ArrayDeque<Stroke>> queue = it.next();
+            if (queue.getValue().isEmpty()) { it.remove(); continue; }
+            List<Stroke> chunk = new ArrayList<>();
+            for (int i = 0; i < QUOTA && !queue.getValue().isEmpty(); i++) chunk.add(queue.getValue().removeFirst());
+            origins.add(quote(queue.getKey()));
+            chunks.add(quote(codec.encode(chunk)));
+        }
+        if (chunks.isEmpty()) return;
+        String relayed = STROKE_CHANNEL + "\n{\"origins\":" + origins + ",\"strokes\":" + chunks + "}";
+        for (WebSocket page : pages.keySet()) if (page.isOpen()) page.send(relayed);
+    }
+
+    /** The live segments after the sequence of the hello, a quota per reply, or all if it is from another epoch. */
+    private List<String> replies(String hello, String self) {
+        Matcher epochMatch = EPOCH.matcher(hello), seqMatch = SEQ.matcher(hello);
+        boolean full = !epochMatch.find() || !epoch.equals(epochMatch.group(1));
+        int seq = !full && seqMatch.find() ? Integer.parseInt(seqMatch.group(1)) : -1;
+        List<Stroke> strokes = new ArrayList<>();
+        List<Integer> seqs = new ArrayList<>();
+        for (int id = scene.after(seq); id < scene.size(); id++) {
+            if (!scene.isLive(id)) continue;
+            strokes.add(scene.get(id));
+            seqs.add(scene.seq(id));
+        }
+        List<String> out = new ArrayList<>();
+        for (int from = 0; from < strokes.size(); from += QUOTA) {
+            int to = Math.min(from + QUOTA, strokes.size());
+            boolean more = to < strokes.size();
+            out.add(reply(full && out.isEmpty(), more ? seqs.get(to - 1) : scene.seq(), more, self,
+                    codec.encode(strokes.subList(from, to))));
+        }
+        if (out.isEmpty()) out.add(reply(full, scene.seq(), false, self, null));
+        return out;
+    }
+
+    private String reply(boolean full, int seq, boolean more, String self, String strokes) {
+        return "{\"epoch\":" + quote(epoch) + ",\"seq\":" + seq + ",\"full\":" + full + ",\"more\":" + more
+                + ",\"live\":" + scene.live()
+                + ",\"you\":" + quote(self) + (strokes == null ? "" : ",\"strokes\":" + quote(strokes)) + "}";
+    }
+
+    private String newEpoch() { return Integer.toString(random.nextInt(Integer.MAX_VALUE), 36); }
+
+    static String quote(String s) {
+        StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') out.append('\\').append(c);
+            else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+            else out.append(c);
+        }
+        return out.append('"').toString();
+    }
+}
@@ -15,6 +15,7 @@ public class Session {
     public native void addUpdateListener(A1<Boolean> listener);
     /** @param listener (namespace, message) */
     public native void addMessageListener(String namespace, A2<String, String> listener);
+    public native void removeMessageListener(String namespace, A2<String, String> listener);
     public native void sendMessage(String namespace, String message, A0 onSuccess, A1<Object> onError);
     public native void stop(A0 onSuccess, A1<Object> onError);
 }
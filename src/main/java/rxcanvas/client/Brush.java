@@ -0,0 +1,81 @@
+package rxcanvas.client;
+
+/**
+ * Variable width ink. Along a drag the width follows the pen pressure or, for pointers without it, the speed, the
+ * faster the thinner like a nib leaving less ink. Segments with a width profile are painted as their outline, the
+ * curve offset by half the width on each side plus round caps, filled in one path per color like the constant width
+ * ones are stroked, so varying the width doesn't add draw calls.
+ */
+public class Brush {
+    static final double MIN = 0.25; // the thinnest, as a factor of the stroke width
+    static final double SLOW = 0.05, FAST = 2.5; // px per ms drawn at full and at the thinnest width
+    static final double SMOOTHING = 0.3; // weight of each sample, so the width doesn't jitter with the input
+    static final double STEP = 4; // px of curve per straight step of the outline
+    static final int MAX_STEPS = 16;
+    // painting is single threaded, the outline samples are kept between calls
+    private static final double[] xs = new double[MAX_STEPS + 1], ys = new double[MAX_STEPS + 1];
+
+    private double factor = Double.NaN;
+    private double x, y, time;
+
+    /**
+     * The width factor, in [{@value #MIN}, 1], at this sample of the drag. The pressure is used if known, NaN if not,
+     * else the speed since the previous sample.
+     */
+    public double width(double px, double py, double timeStamp, double pressure) {
+        double target;
+        if (!Double.isNaN(pressure)) target = MIN + (1 - MIN) * pressure;
+        else if (Double.isNaN(factor)) target = 1;
+        else {
+            double speed = Math.hypot(px - x, py - y) / Math.max(timeStamp - time, 1);
+            target = 1 - (1 - MIN) * Math.max(0, Math.min(1, (speed - SLOW) / (FAST - SLOW)));
+        }
+        factor = Double.isNaN(factor) ? target : factor + (target - factor) * SMOOTHING;
+        x = px; y = py; time = timeStamp;
+        return factor;
+    }
+
+    /**
+     * Adds the outline of the segment, which must have {@link Stroke#widths}: the curve sampled in straight steps and
+     * offset on both sides, and a circle on each end. All of them wind clockwise, so they fill as their union.
+     */
+    static void outline(Stroke stroke, Path path) {
+        double[][] l = stroke.line;
+        double r0 = stroke.widths[0] / 2, r1 = stroke.widths[1] / 2;
+        double length = Math.hypot(l[1][0] - l[0][0], l[1][1] - l[0][1])
+                + Math.hypot(l[2][0] - l[1][0], l[2][1] - l[1][1]);
+        int n = (int) Math.max(1, Math.min(MAX_STEPS, Math.ceil(length / STEP)));
+        for (int i = 0; i <= n; i++) {
+            // cubic with the first control point at the start, as painted by the renderers
+            double t = (double) i / n, u = 1 - t;
+            double a = u * u * u + 3 * u * u * t, b = 3 * u * t * t, c = t * t * t;
+            xs[i] = a * l[0][0] + b * l[1][0] + c * l[2][0];
+            ys[i] = a * l[0][1] + b * l[1][1] + c * l[2][1];
+        }
+        if (length > 0) {
+            for (int i = 0; i <= n; i++) side(path, n, i, -1, r0 + (r1 - r0) * i / n);
+            for (int i = n; i >= 0; i--) side(path, n, i, 1, r0 + (r1 - r0) * i / n);
+            path.close();
+        }
+        path.circle(l[0][0], l[0][1], r0);
+        path.circle(l[2][0], l[2][1], r1);
+    }
+
+    /** The sample offset along the normal, its direction taken from the neighbour samples. */
+    private static void side(Path path, int n, int i, int side, double r) {
+        int next = Math.min(n, i + 1), prev = Math.max(0, i - 1);
+        double dx = xs[next] - xs[prev], dy = ys[next] - ys[prev];
+        double d = Math.hypot(dx, dy), k = d > 0 ? side * r / d : 0;
+        double px = xs[i] - dy * k, py = ys[i] + dx * k;
+        if (side < 0 && i == 0) path.moveTo(px, py);
+        else path.lineTo(px, py);
+    }
+
+    interface Path {
+        void moveTo(double x, double y);
+        void lineTo(double x, double y);
+        void close();
+        /** A closed circle, clockwise. */
+        void circle(double x, double y, double r);
+    }
+}
@@ -0,0 +1,133 @@
+package rxcanvas.client;
+
+import java.util.Arrays;
+
+/** Minimal byte buffer helpers (varints and base64) shared by the binary formats. */
+public class Bytes {
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_INDEX = new int[128];
+    static {
+        Arrays.fill(BASE64_INDEX, -1);
+        for (int i = 0; i < BASE64.length; i++) BASE64_INDEX[BASE64[i]] = i;
+    }
+
+    public static class Writer {
+        private byte[] buf;
+        private int size;
+
+        public Writer(int capacity) { buf = new byte[Math.max(capacity, 16)]; }
+
+        public int size() { return size; }
+
+        public void write(int b) {
+            if (size == buf.length) buf = Arrays.copyOf(buf, size * 2);
+            buf[size++] = (byte) b;
+        }
+
+        public void write(byte[] bytes) {
+            if (size + bytes.length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + bytes.length));
+            }
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        public void reset() { size = 0; }
+
+        /** Unsigned LEB128. */
+        public void writeVarint(int v) {
+            while ((v & ~0x7f) != 0) {
+                write((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        /** Zig-zag encoded so small negative deltas stay small. */
+        public void writeSigned(int v) { writeVarint((v << 1) ^ (v >> 31)); }
+
+        public void writeString(String s) {
+            writeVarint(s.length());
+            for (int i = 0; i < s.length(); i++) writeVarint(s.charAt(i));
+        }
+
+        public byte[] toByteArray() { return Arrays.copyOf(buf, size); }
+
+        /** Appends the base64 encoding of the written bytes to {@code out}. */
+        public StringBuilder base64(StringBuilder out) {
+            for (int i = 0; i < size; i += 3) {
+                int n = (buf[i] & 0xff) << 16;
+                if (i + 1 < size) n |= (buf[i + 1] & 0xff) << 8;
+                if (i + 2 < size) n |= buf[i + 2] & 0xff;
+                out.append(BASE64[n >>> 18 & 0x3f]).append(BASE64[n >>> 12 & 0x3f]);
+                out.append(i + 1 < size ? BASE64[n >>> 6 & 0x3f] : '=');
+                out.append(i + 2 < size ? BASE64[n & 0x3f] : '=');
+            }
+            return out;
+        }
+    }
+
+    public static class Reader {
+        private final byte[] buf;
+        private final int limit;
+        private int pos;
+
+        public Reader(byte[] buf) { this(buf, 0, buf.length); }
+
+        public Reader(byte[] buf, int offset, int limit) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = limit;
+        }
+
+        public boolean hasRemaining() { return pos < limit; }
+
+        public int position() { return pos; }
+
+        public int read() {
+            if (pos >= limit) throw new IllegalStateException("unexpected end of data at " + pos);
+            return buf[pos++] & 0xff;
+        }
+
+        public int readVarint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = read();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+        }
+
+        public int readSigned() {
+            int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        public String readString() {
+            int length = readVarint();
+            StringBuilder out = new StringBuilder(length);
+            for (int i = 0; i < length; i++) out.append((char) readVarint());
+            return out.toString();
+        }
+    }
+
+    /** Decodes the base64 text starting at {@code offset}. */
+    public static byte[] base64(String in, int offset) {
+        int end = in.length();
+        while (end > offset && in.charAt(end - 1) == '=') end--;
+        byte[] out = new byte[(end - offset) * 3 / 4];
+        int n = 0, bits = 0, o = 0;
+        for (int i = offset; i < end; i++) {
+            char c = in.charAt(i);
+            int v = c < 128 ? BASE64_INDEX[c] : -1;
+            if (v < 0) throw new IllegalArgumentException("invalid base64 char '" + c + "' at " + i);
+            n = n << 6 | v; bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[o++] = (byte) (n >>> bits);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,229 @@
+package rxcanvas.client;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.canvas.client.Canvas;
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.canvas.dom.client.ImageData;
+import com.google.gwt.dom.client.CanvasElement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queues draw operations and applies them once per animation frame. Consecutive segments sharing color and width
+ * are drawn as a single path, and the context state is only touched when it changes.
+ */
+public class CanvasRenderer implements Renderer {
+    private final Context2d ctx;
+    private double ratio;
+    private final List<Object> queue = new ArrayList<>(); // Stroke or Region
+    private final List<Stroke> predictions = new ArrayList<>();
+    private final List<Backup> underPredictions = new ArrayList<>();
+    private boolean scheduled;
+
+    public CanvasRenderer(Context2d ctx, double ratio) {
+        this.ctx = ctx;
+        this.ratio = ratio;
+    }
+
+    @Override public void stroke(Stroke stroke) {
+        queue.add(stroke);
+        schedule();
+    }
+
+    @Override public void repaint(double[] rect, List<Stroke> strokes) {
+        queue.add(new Region(rect, strokes));
+        schedule();
+    }
+
+    @Override public void predict(Stroke stroke) {
+        predictions.add(stroke);
+        schedule();
+    }
+
+    /** At the same ratio the pixels are copied back, resizing the canvas clears it. */
+    @Override public boolean resize(double width, double height, double ratio) {
+        CanvasElement canvas = ctx.getCanvas();
+        boolean keep = ratio == this.ratio;
+        Canvas copy = keep ? copy(canvas) : null;
+        canvas.setWidth((int) Math.round(width * ratio));
+        canvas.setHeight((int) Math.round(height * ratio));
+        if (copy != null) ctx.drawImage(copy.getCanvasElement(), 0, 0);
+        else underPredictions.clear(); // in device pixels
+        ctx.scale(ratio, ratio);
+        this.ratio = ratio;
+        return keep;
+    }
+
+    /** The pixels are copied once the queued operations are applied, without the predictions. */
+    @Override public Snapshot snapshot() {
+        apply();
+        Canvas copy = copy(ctx.getCanvas());
+        return copy == null ? null : new Copy(copy.getCanvasElement());
+    }
+
+    /** A copy of the canvas pixels, null if it has no size. */
+    static Canvas copy(CanvasElement canvas) {
+        if (canvas.getWidth() == 0 || canvas.getHeight() == 0) return null;
+        Canvas copy = Canvas.createIfSupported();
+        copy.setCoordinateSpaceWidth(canvas.getWidth());
+        copy.setCoordinateSpaceHeight(canvas.getHeight());
+        copy.getContext2d().drawImage(canvas, 0, 0);
+        return copy;
+    }
+
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        AnimationScheduler.get().requestAnimationFrame(timestamp -> flush());
+    }
+
+    private void flush() {
+        scheduled = false;
+        double start = Metrics.now();
+        apply();
+        if (!predictions.isEmpty()) {
+            ctx.save();
+            ctx.setLineCap(Context2d.LineCap.ROUND);
+            for (Stroke prediction : predictions) underPredictions.add(backup(prediction));
+            draw(ctx, predictions);
+            predictions.clear();
+            ctx.restore();
+            schedule(); // to remove them
+        }
+        Metrics.frame(start);
+    }
+
+    /** Removes the last predictions and applies the queued operations. */
+    private void apply() {
+        for (Backup under : underPredictions) ctx.putImageData(under.data, under.x, under.y);
+        underPredictions.clear();
+        ctx.save();
+        ctx.setLineCap(Context2d.LineCap.ROUND);
+        draw(ctx, queue);
+        queue.clear();
+        ctx.restore();
+    }
+
+    /**
+     * Draws the ops, {@link Stroke strokes} or {@link Region regions}, grouping the strokes sharing a style. Variable
+     * width strokes are filled {@link Brush#outline outlines}, grouped by color.
+     */
+    static void draw(Context2d ctx, List<?> ops) {
+        String color = null; double width = Double.NaN; boolean open = false, fill = false;
+        Brush.Path outline = null;
+        for (Object op : ops) {
+            if (op instanceof Stroke) {
+                Stroke stroke = (Stroke) op;
+                boolean variable = stroke.widths != null;
+                if (!stroke.color.equals(color) || variable != fill || !variable && stroke.stroke != width) {
+                    if (open) paint(ctx, fill);
+                    color = stroke.color; width = stroke.stroke; fill = variable; open = false;
+                    if (fill) ctx.setFillStyle(color);
+                    else {
+                        ctx.setStrokeStyle(color);
+                        ctx.setLineWidth(width);
+                    }
+                }
+                if (!open) { ctx.beginPath(); open = true; }
+                double[][] l = stroke.line;
+                if (fill) Brush.outline(stroke, outline != null ? outline : (outline = path(ctx)));
+                else {
+                    ctx.moveTo(l[0][0], l[0][1]);
+                    ctx.bezierCurveTo(l[0][0], l[0][1], l[1][0], l[1][1], l[2][0], l[2][1]);
+                }
+            } else {
+                if (open) { paint(ctx, fill); open = false; }
+                Region region = (Region) op;
+                double[] r = region.rect;
+                ctx.save();
+                if (r == null) {
+                    ctx.setTransform(1, 0, 0, 1, 0, 0);
+                    ctx.clearRect(0, 0, ctx.getCanvas().getWidth(), ctx.getCanvas().getHeight());
+                    if (region.from != null) ctx.drawImage(region.from, 0, 0);
+                    ctx.restore();
+                    ctx.save();
+                } else {
+                    ctx.beginPath();
+                    ctx.rect(r[0], r[1], r[2], r[3]);
+                    ctx.clip();
+                    ctx.clearRect(r[0], r[1], r[2], r[3]);
+                    if (region.from != null) {
+                        // a copy of the same canvas, pixel to pixel within the clip
+                        ctx.save();
+                        ctx.setTransform(1, 0, 0, 1, 0, 0);
+                        ctx.drawImage(region.from, 0, 0);
+                        ctx.restore();
+                    }
+                }
+                draw(ctx, region.strokes);
+                ctx.restore();
+            }
+        }
+        if (open) paint(ctx, fill);
+    }
+
+    private static void paint(Context2d ctx, boolean fill) {
+        if (fill) ctx.fill();
+        else ctx.stroke();
+    }
+
+    static Brush.Path path(Context2d ctx) {
+        return new Brush.Path() {
+            @Override public void moveTo(double x, double y) { ctx.moveTo(x, y); }
+            @Override public void lineTo(double x, double y) { ctx.lineTo(x, y); }
+            @Override public void close() { ctx.closePath(); }
+            @Override public void circle(double x, double y, double r) {
+                ctx.moveTo(x + r, y);
+                ctx.arc(x, y, r, 0, 2 * Math.PI);
+            }
+        };
+    }
+
+    /** Copies the device pixels covered by the stroke, image data ignores the context transform. */
+    private Backup backup(Stroke stroke) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (double[] p : stroke.line) {
+            minX = Math.min(minX, p[0]); maxX = Math.max(maxX, p[0]);
+            minY = Math.min(minY, p[1]); maxY = Math.max(maxY, p[1]);
+        }
+        double pad = stroke.stroke / 2 + 2;
+        int x = (int) Math.max(0, Math.floor((minX - pad) * ratio));
+        int y = (int) Math.max(0, Math.floor((minY - pad) * ratio));
+        int w = (int) Math.ceil((maxX + pad) * ratio) - x, h = (int) Math.ceil((maxY + pad) * ratio) - y;
+        return new Backup(ctx.getImageData(x, y, Math.max(w, 1), Math.max(h, 1)), x, y);
+    }
+
+    static class Region {
+        final double[] rect;
+        final List<Stroke> strokes;
+        final CanvasElement from; // the pixels to restore, or null to clear
+        Region(double[] rect, List<Stroke> strokes) {
+            this(rect, strokes, null);
+        }
+        Region(double[] rect, List<Stroke> strokes, CanvasElement from) {
+            this.rect = rect;
+            this.strokes = strokes;
+            this.from = from;
+        }
+    }
+
+    private class Copy implements Snapshot {
+        final CanvasElement canvas;
+        Copy(CanvasElement canvas) { this.canvas = canvas; }
+        @Override public double bytes() { return 4. * canvas.getWidth() * canvas.getHeight(); }
+        @Override public void restore(double[] rect, List<Stroke> strokes) {
+            queue.add(new Region(rect, strokes, canvas));
+            schedule();
+        }
+    }
+
+    private static class Backup {
+        final ImageData data;
+        final int x, y;
+        Backup(ImageData data, int x, int y) {
+            this.data = data;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package rxcanvas.client;
+
+import static java.lang.Boolean.TRUE;
+import static rxcanvas.client.RxCanvas.parse;
+import static rxcanvas.client.RxCanvas.stringify;
+
+import io.reactivex.Completable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+import rxcanvas.client.RxChromeCast.Receiver;
+
+/**
+ * Relay mode, the receiver broadcasts the strokes of every sender to all of them so they share the same canvas.
+ * Strokes are queued per sender in arrival order and each flush takes at most a quota from each queue, so one
+ * fast device can't starve the bus. A queue beyond its capacity drops its oldest strokes, late senders still get
+ * them through the sync catch-up.
+ */
+public class CastRelay {
+    static final int QUOTA = 200, CAPACITY = 2_000;
+
+    private final Map<String, ArrayDeque<Stroke>> queues = new LinkedHashMap<>();
+    private final StrokeCodec codec;
+    private final int budget;
+
+    public CastRelay(StrokeCodec codec, int budget) {
+        this.codec = codec;
+        this.budget = budget;
+    }
+
+    public void offer(String senderId, List<Stroke> strokes) {
+        ArrayDeque<Stroke> queue = queues.computeIfAbsent(senderId, k -> new ArrayDeque<>());
+        queue.addAll(strokes);
+        while (queue.size() > CAPACITY) queue.removeFirst();
+    }
+
+    /** Broadcasts up to the quota of each sender, in messages within the budget. */
+    public void flush(Receiver receiver) {
+        List<String> origins = new ArrayList<>(), chunks = new ArrayList<>();
+        int cost = 0;
+        Iterator<Map.Entry<String, ArrayDeque<Stroke>>> it = queues.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ArrayDeque<Stroke>> queue = it.next();
+            if (queue.getValue().isEmpty()) { it.remove(); continue; }
+            List<Stroke> chunk = new ArrayList<>();
+            for (int i = 0; i < QUOTA && !queue.getValue().isEmpty(); i++) {
+                Stroke stroke = queue.getValue().peekFirst();
+                int c = codec.cost(stroke) + 1;
+                if (cost + c > budget) {
+                    if (!chunk.isEmpty()) { origins.add(queue.getKey()); chunks.add(codec.encode(chunk)); }
+                    broadcast(receiver, origins, chunks);
+                    chunk = new ArrayList<>(); cost = 0;
+                }
+                chunk.add(queue.getValue().removeFirst());
+                cost += c;
+            }
+            origins.add(queue.getKey()); chunks.add(codec.encode(chunk));
+            cost += queue.getKey().length() + 8;
+        }
+        broadcast(receiver, origins, chunks);
+    }
+
+    private void broadcast(Receiver receiver, List<String> origins, List<String> chunks) {
+        if (chunks.isEmpty()) return;
+        RelayMessage message = new RelayMessage();
+        message.origins = origins.toArray(new String[0]);
+        message.strokes = chunks.toArray(new String[0]);
+        receiver.broadcast(RxCanvas.STROKE_CHANNEL, stringify(message));
+        origins.clear(); chunks.clear();
+    }
+
+    /** Sender side, paints the strokes relayed from the other senders. */
+    public static Completable listen(Transport transport, Drawing drawing, StrokeCodec codec, CastSync sync) {
+        return transport.messages(RxCanvas.STROKE_CHANNEL).doOnNext(json -> {
+            RelayMessage message = parse(json);
+            for (int i = 0; i < message.origins.length; i++) {
+                String self = sync.self();
+                if (message.origins[i].equals(self)) continue;
+                List<Stroke> strokes = new ArrayList<>();
+                for (Stroke stroke : codec.decode(message.strokes[i])) {
+                    // until the sync reply tells who we are, own strokes are recognized by the scene
+                    if (self == null && !TRUE.equals(stroke.undo)
+                            && drawing.scene().contains(stroke, CastSync.TOLERANCE)) continue;
+                    strokes.add(stroke);
+                }
+                drawing.strokes(strokes);
+            }
+        }).ignoreElements();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class RelayMessage {
+        public String[] origins;
+        public String[] strokes;
+    }
+}
@@ -0,0 +1,165 @@
+package rxcanvas.client;
+
+import static io.reactivex.Observable.merge;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static rxcanvas.client.RxCanvas.parse;
+import static rxcanvas.client.RxCanvas.stringify;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import java.util.ArrayList;
+import java.util.List;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+import rxcanvas.client.RxChromeCast.Receiver;
+
+/**
+ * Late-join catch-up between senders and the receiver (or the relay server, which keeps a scene too). The
+ * receiver scene is the stroke log. A sender says hello
+ * with the receiver epoch and the last sequence it knows, and gets only the segments added since, or the whole
+ * compacted scene if it doesn't know this receiver instance. If the receiver has lost its drawing (e.g. it has been
+ * restarted) the sender pushes its own scene instead, so the TV doesn't go blank on reconnection, and if both have
+ * content the sender keeps its own and pushes the segments the receiver lacks once the catch-up is complete.
+ */
+public class CastSync {
+    public static final String SYNC_CHANNEL = "urn:x-cast:com.intendia.rxcanvas-gwt.sync";
+    private static final long COMPACT_PERIOD_S = 30;
+    static final double TOLERANCE = 1. / CompactStrokeCodec.QUANTUM;
+
+    private final Drawing drawing;
+    private final StrokeCodec codec;
+    private final int budget;
+    // receiver instance epoch, in the sender the last known one
+    private String epoch = "";
+    private int seq = -1;
+    private String self; // sender id assigned by the receiver to this sender
+    private Scene unsent; // during a full catch-up, the local segments not received yet
+
+    public CastSync(Drawing drawing, StrokeCodec codec, int budget) {
+        this.drawing = drawing;
+        this.codec = codec;
+        this.budget = budget;
+    }
+
+    /** Sender id of this sender in the receiver, null until the first catch-up. */
+    public String self() { return self; }
+
+    /** Receiver side, answers each hello with the missing segments and compacts the log periodically. */
+    public Observable<?> serve(Receiver receiver) {
+        epoch = Integer.toString((int) (Math.random() * Integer.MAX_VALUE), 36);
+        return merge(
+                receiver.castMessage(SYNC_CHANNEL).doOnNext(event -> {
+                    List<String> replies = replies(parse(event.data), event.senderId);
+                    for (String reply : replies) receiver.send(SYNC_CHANNEL, event.senderId, reply);
+                }),
+                Observable.interval(COMPACT_PERIOD_S, SECONDS).doOnNext(n -> drawing.scene().compact()));
+    }
+
+    /** Sender side, catches up with the receiver each time a session (or connection) starts. */
+    public Completable join(Transport transport) {
+        SyncMessage hello = new SyncMessage();
+        hello.epoch = epoch;
+        hello.seq = seq;
+        return transport.messages(SYNC_CHANNEL)
+                .concatMapCompletable(message -> apply(transport, parse(message)))
+                .mergeWith(transport.send(SYNC_CHANNEL, stringify(hello)));
+    }
+
+    /** Sends the strokes through the stroke channel, split in messages within the budget. */
+    public Completable push(Transport transport, List<Stroke> strokes) {
+        return Observable.fromIterable(chunks(strokes, 0)).concatMapCompletable(chunk ->
+                transport.send(RxCanvas.STROKE_CHANNEL, codec.encode(chunk)));
+    }
+
+    private List<String> replies(SyncMessage hello, String senderId) {
+        Scene scene = drawing.scene();
+        boolean full = !epoch.equals(hello.epoch);
+        List<Stroke> strokes = new ArrayList<>();
+        List<Integer> seqs = new ArrayList<>();
+        for (int id = full ? 0 : scene.after(hello.seq); id < scene.size(); id++) {
+            if (!scene.isLive(id)) continue;
+            strokes.add(scene.get(id));
+            seqs.add(scene.seq(id));
+        }
+        List<String> out = new ArrayList<>();
+        int from = 0;
+        for (List<Stroke> chunk : chunks(strokes, 200)) {
+            SyncMessage reply = new SyncMessage();
+            reply.epoch = epoch;
+            reply.you = senderId;
+            reply.full = full && out.isEmpty();
+            reply.live = scene.live();
+            reply.strokes = codec.encode(chunk);
+            from += chunk.size();
+            reply.more = from < strokes.size();
+            reply.seq = from == strokes.size() ? scene.seq() : seqs.get(from - 1);
+            out.add(stringify(reply));
+        }
+        if (out.isEmpty()) {
+            SyncMessage reply = new SyncMessage();
+            reply.epoch = epoch;
+            reply.you = senderId;
+            reply.full = full;
+            reply.live = scene.live();
+            reply.seq = scene.seq();
+            out.add(stringify(reply));
+        }
+        return out;
+    }
+
+    private Completable apply(Transport transport, SyncMessage reply) {
+        Completable push = Completable.complete();
+        if (reply.full) {
+            unsent = null;
+            if (reply.live == 0 && drawing.scene().live() > 0) push = push(transport, drawing.scene().strokes());
+            else if (drawing.scene().live() > 0) {
+                // drawn while disconnected (or on another receiver), kept and pushed if the receiver lacks them
+                unsent = new Scene();
+                for (Stroke stroke : drawing.scene().strokes()) unsent.add(stroke);
+            }
+        }
+        // own strokes sent after the last catch-up come back, skip them
+        if (reply.strokes != null) for (Stroke stroke : codec.decode(reply.strokes)) {
+            if (unsent != null) {
+                int id = unsent.find(stroke, TOLERANCE);
+                if (id >= 0) unsent.remove(id);
+            }
+            if (!drawing.scene().contains(stroke, TOLERANCE)) drawing.stroke(stroke);
+        }
+        if (unsent != null && !reply.more) {
+            push = push(transport, unsent.strokes());
+            unsent = null;
+        }
+        epoch = reply.epoch;
+        seq = reply.seq;
+        self = reply.you;
+        return push;
+    }
+
+    /** Splits the strokes in messages of at most budget chars, minus the reserved envelope chars. */
+    private List<List<Stroke>> chunks(List<Stroke> strokes, int reserved) {
+        List<List<Stroke>> out = new ArrayList<>();
+        int from = 0, cost = 0;
+        for (int i = 0; i < strokes.size(); i++) {
+            int c = codec.cost(strokes.get(i));
+            if (i > from && cost + c > budget - reserved) {
+                out.add(strokes.subList(from, i));
+                from = i; cost = 0;
+            }
+            cost += c;
+        }
+        if (from < strokes.size()) out.add(strokes.subList(from, strokes.size()));
+        return out;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class SyncMessage {
+        public String epoch;
+        public int seq;
+        public boolean full;
+        public boolean more; // more replies to the same hello follow
+        public int live;
+        public String strokes;
+        public String you;
+    }
+}
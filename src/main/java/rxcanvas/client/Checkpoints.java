@@ -0,0 +1,51 @@
+package rxcanvas.client;
+
+import java.util.ArrayDeque;
+
+/**
+ * Raster copies of the ink, taken at most every {@value #EVERY} segments, so an area can be repainted from the latest
+ * copy plus the segments painted since, instead of every segment below it. A copy is dropped once a segment it shows
+ * is removed, and the oldest ones are evicted beyond the memory budget.
+ */
+class Checkpoints {
+    static final int EVERY = 1_000;
+
+    private final double budget; // bytes
+    private final ArrayDeque<Checkpoint> taken = new ArrayDeque<>(); // oldest first
+    private double bytes;
+
+    Checkpoints(double budget) { this.budget = budget; }
+
+    /** Takes a copy of the ink painted up to the sequence, if due and the renderer can copy it. */
+    void take(Renderer renderer, int seq) {
+        Checkpoint last = taken.peekLast();
+        if (budget <= 0 || seq - (last == null ? -1 : last.seq) < EVERY) return;
+        Renderer.Snapshot snapshot = renderer.snapshot();
+        if (snapshot == null) return;
+        taken.addLast(new Checkpoint(seq, snapshot));
+        bytes += snapshot.bytes();
+        while (bytes > budget && !taken.isEmpty()) bytes -= taken.removeFirst().snapshot.bytes();
+    }
+
+    /** The latest copy, or null. */
+    Checkpoint latest() { return taken.peekLast(); }
+
+    /** Drops the copies showing the segment with this sequence. */
+    void removed(int seq) {
+        while (!taken.isEmpty() && taken.peekLast().seq >= seq) bytes -= taken.removeLast().snapshot.bytes();
+    }
+
+    void clear() {
+        taken.clear();
+        bytes = 0;
+    }
+
+    static class Checkpoint {
+        final int seq; // of the last segment painted
+        final Renderer.Snapshot snapshot;
+        Checkpoint(int seq, Renderer.Snapshot snapshot) {
+            this.seq = seq;
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package rxcanvas.client;
+
+import static java.lang.Boolean.TRUE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary stroke format packed in base64. Colors are sent as palette indexes, coordinates are quantized to
+ * 1/{@value #QUANTUM} px and delta encoded as zig-zag varints. Consecutive {@code buffer(3, 1)} windows share two
+ * points, so a segment continuing the previous one only carries its new point, and a smoothed segment starts where
+ * the previous one ends, so it carries two. Variable width segments are preceded by their width profile, as
+ * 1/{@value #PROFILE_MAX} of the style width, only the end one if the start continues the previous end. Runs of
+ * {@link Stroke#undo undo} segments are delimited by an op. Untagged messages are decoded by the fallback codec
+ * (JSON in the app), so receivers understand both formats.
+ */
+public class CompactStrokeCodec implements StrokeCodec {
+    static final char TAG = '~';
+    static final int QUANTUM = 4;
+    static final int PROFILE_MAX = 255;
+    private static final int OP_STYLE = 1, OP_SEGMENT = 2, OP_CONTINUE = 3, OP_CHAIN = 4, OP_TAPER = 5, OP_PROFILE = 6;
+    private static final int OP_UNDO = 7, OP_PAINT = 8;
+    private static final int INLINE_COLOR = 0xff;
+
+    private final List<String> palette;
+    private final StrokeCodec fallback;
+
+    public CompactStrokeCodec(List<String> palette, StrokeCodec fallback) {
+        this.palette = palette;
+        this.fallback = fallback;
+    }
+
+    @Override public String encode(List<Stroke> strokes) {
+        Bytes.Writer out = new Bytes.Writer(strokes.size() * 6 + 8);
+        write(strokes, out);
+        return out.base64(new StringBuilder(out.size() * 4 / 3 + 4).append(TAG)).toString();
+    }
+
+    @Override public List<Stroke> decode(String message) {
+        if (message.isEmpty() || message.charAt(0) != TAG) return fallback.decode(message);
+        return read(new Bytes.Reader(Bytes.base64(message, 1)));
+    }
+
+    /** Writes the strokes in the binary format, without the base64 packing. */
+    void write(List<Stroke> strokes, Bytes.Writer out) {
+        String color = null; double width = Double.NaN;
+        int[] last = new int[6], next = new int[6];
+        boolean continuable = false, undo = false;
+        int px = 0, py = 0, end = PROFILE_MAX;
+        for (Stroke stroke : strokes) {
+            if (TRUE.equals(stroke.undo) != undo) {
+                undo = !undo;
+                out.write(undo ? OP_UNDO : OP_PAINT);
+            }
+            if (!stroke.color.equals(color) || stroke.stroke != width) {
+                color = stroke.color; width = stroke.stroke;
+                out.write(OP_STYLE);
+                int index = palette.indexOf(color);
+                if (index >= 0 && index < INLINE_COLOR) out.write(index);
+                else { out.write(INLINE_COLOR); out.writeString(color); }
+                out.writeVarint(quantize(width));
+            }
+            if (stroke.widths != null) {
+                int start = profile(stroke.widths[0], width);
+                if (start != end) { out.write(OP_PROFILE); out.write(start); }
+                else out.write(OP_TAPER);
+                out.write(end = profile(stroke.widths[1], width));
+            } else {
+                end = PROFILE_MAX;
+            }
+            for (int i = 0; i < 3; i++) {
+                next[i * 2] = quantize(stroke.line[i][0]);
+                next[i * 2 + 1] = quantize(stroke.line[i][1]);
+            }
+            if (continuable && next[0] == last[2] && next[1] == last[3] && next[2] == last[4] && next[3] == last[5]) {
+                out.write(OP_CONTINUE);
+                out.writeSigned(next[4] - px); out.writeSigned(next[5] - py);
+            } else if (continuable && next[0] == last[4] && next[1] == last[5]) {
+                out.write(OP_CHAIN);
+                for (int i = 2; i < 6; i += 2) {
+                    out.writeSigned(next[i] - px); out.writeSigned(next[i + 1] - py);
+                    px = next[i]; py = next[i + 1];
+                }
+            } else {
+                out.write(OP_SEGMENT);
+                for (int i = 0; i < 6; i += 2) {
+                    out.writeSigned(next[i] - px); out.writeSigned(next[i + 1] - py);
+                    px = next[i]; py = next[i + 1];
+                }
+            }
+            px = next[4]; py = next[5];
+            int[] swap = last; last = next; next = swap;
+            continuable = true;
+        }
+    }
+
+    /** Reads the strokes written by {@link #write} up to the limit of the reader. */
+    List<Stroke> read(Bytes.Reader in) {
+        List<Stroke> strokes = new ArrayList<>();
+        String color = null; Double width = null;
+        int[] q = new int[6];
+        int px = 0, py = 0, start = -1, end = PROFILE_MAX;
+        boolean undo = false;
+        while (in.hasRemaining()) {
+            int op = in.read();
+            switch (op) {
+                case OP_UNDO:
+                case OP_PAINT:
+                    undo = op == OP_UNDO;
+                    continue;
+                case OP_PROFILE:
+                    start = in.read();
+                    end = in.read();
+                    continue;
+                case OP_TAPER:
+                    start = end;
+                    end = in.read();
+                    continue;
+                case OP_STYLE:
+                    int index = in.read();
+                    color = index == INLINE_COLOR ? in.readString() : palette.get(index);
+                    width = (double) in.readVarint() / QUANTUM;
+                    continue;
+                case OP_SEGMENT:
+                    for (int i = 0; i < 6; i += 2) {
+                        px = q[i] = px + in.readSigned();
+                        py = q[i + 1] = py + in.readSigned();
+                    }
+                    break;
+                case OP_CONTINUE:
+                    System.arraycopy(q, 2, q, 0, 4);
+                    px = q[4] = px + in.readSigned();
+                    py = q[5] = py + in.readSigned();
+                    break;
+                case OP_CHAIN:
+                    q[0] = q[4]; q[1] = q[5];
+                    for (int i = 2; i < 6; i += 2) {
+                        px = q[i] = px + in.readSigned();
+                        py = q[i + 1] = py + in.readSigned();
+                    }
+                    break;
+                default: throw new IllegalArgumentException("unknown stroke op " + op + " at " + in.position());
+            }
+            if (color == null) throw new IllegalArgumentException("segment without style at " + in.position());
+            Stroke stroke = new Stroke();
+            stroke.color = color;
+            stroke.stroke = width;
+            stroke.line = new double[][] {
+                    { (double) q[0] / QUANTUM, (double) q[1] / QUANTUM },
+                    { (double) q[2] / QUANTUM, (double) q[3] / QUANTUM },
+                    { (double) q[4] / QUANTUM, (double) q[5] / QUANTUM } };
+            if (start >= 0) stroke.widths = new double[] { width * start / PROFILE_MAX, width * end / PROFILE_MAX };
+            else end = PROFILE_MAX;
+            start = -1;
+            if (undo) stroke.undo = TRUE;
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+
+    @Override public int cost(Stroke stroke) {
+        return (24 + stroke.color.length() * 2 + (stroke.widths != null ? 3 : 0)) * 4 / 3;
+    }
+
+    private static int quantize(double v) { return (int) Math.round(v * QUANTUM); }
+
+    private static int profile(double w, double width) {
+        return (int) Math.max(0, Math.min(PROFILE_MAX, Math.round(w / width * PROFILE_MAX)));
+    }
+}
@@ -0,0 +1,141 @@
+package rxcanvas.client;
+
+import static java.lang.Boolean.TRUE;
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The retained scene and the renderer painting it, every change of the drawing goes through here. Removed areas are
+ * repainted from the latest raster checkpoint, if the renderer supports them, plus the segments painted since.
+ */
+public class Drawing {
+    static final double ERASE_RADIUS = 5;
+
+    private final Scene scene = new Scene();
+    private final Renderer renderer;
+    private final Checkpoints checkpoints;
+    private Listener listener;
+    private double width, height;
+
+    /** The renderer has been sized to {@code width x height} css px, checkpoints use up to {@code budget} bytes. */
+    public Drawing(Renderer renderer, double width, double height, double budget) {
+        this.renderer = renderer;
+        this.width = width;
+        this.height = height;
+        this.checkpoints = new Checkpoints(budget);
+    }
+
+    public Scene scene() { return scene; }
+
+    /** Sets the listener of the changes, replacing the previous one. */
+    public void listen(Listener listener) { this.listener = listener; }
+
+    /** Paints the stroke or, if it is an {@link Stroke#undo undo}, removes the segment it matches. */
+    public void stroke(Stroke stroke) {
+        if (!TRUE.equals(stroke.undo)) add(stroke);
+        else {
+            double[] dirty = remove(stroke);
+            if (dirty != null) repaint(dirty);
+        }
+    }
+
+    /** Like {@link #stroke} for each, repainting the area of all the removed segments at once. */
+    public void strokes(List<Stroke> strokes) {
+        double[] dirty = null;
+        for (Stroke stroke : strokes) {
+            if (!TRUE.equals(stroke.undo)) add(stroke);
+            else {
+                double[] removed = remove(stroke);
+                if (removed != null) dirty = dirty == null ? removed : Scene.union(dirty, removed);
+            }
+        }
+        if (dirty != null) repaint(dirty);
+    }
+
+    private void add(Stroke stroke) {
+        scene.add(stroke);
+        renderer.stroke(stroke);
+        if (listener != null) listener.stroke(stroke);
+    }
+
+    /** The area to repaint, or null if no live segment matches. */
+    private double[] remove(Stroke undo) {
+        int id = scene.find(undo, CastSync.TOLERANCE);
+        if (id < 0) return null;
+        checkpoints.removed(scene.seq(id));
+        double[] dirty = scene.remove(id);
+        if (listener != null) listener.stroke(undo);
+        return dirty;
+    }
+
+    public void predict(Stroke stroke) {
+        renderer.predict(stroke);
+    }
+
+    /** Removes the segments under the point and repaints only the area they covered, returns the removed ones. */
+    public List<Stroke> erase(double x, double y) {
+        int[] ids = scene.hits(x, y, ERASE_RADIUS);
+        if (ids.length == 0) return emptyList();
+        List<Stroke> removed = new ArrayList<>(ids.length);
+        double[] dirty = null;
+        for (int id : ids) {
+            removed.add(scene.get(id));
+            checkpoints.removed(scene.seq(id));
+            double[] b = scene.remove(id);
+            dirty = dirty == null ? b : Scene.union(dirty, b);
+        }
+        repaint(dirty);
+        if (listener != null) listener.erase(x, y);
+        return removed;
+    }
+
+    /** Takes a raster checkpoint if enough segments were painted since the last one, best when idle. */
+    public void checkpoint() {
+        checkpoints.take(renderer, scene.seq());
+    }
+
+    public void clear() {
+        checkpoints.clear();
+        scene.clear();
+        renderer.repaint(null, emptyList());
+        if (listener != null) listener.clear();
+    }
+
+    /** Repaints everything from the scene, e.g. after the canvas has been resized. */
+    public void redraw() {
+        renderer.repaint(null, scene.strokes());
+    }
+
+    /** Resizes the canvas, repainting from the scene only what the renderer couldn't keep. */
+    public void resize(double width, double height, double ratio) {
+        double oldWidth = this.width, oldHeight = this.height;
+        checkpoints.clear();
+        this.width = width;
+        this.height = height;
+        if (!renderer.resize(width, height, ratio)) redraw();
+        else {
+            if (width > oldWidth) repaint(new double[] { oldWidth, 0, width - oldWidth, height });
+            double kept = Math.min(width, oldWidth);
+            if (height > oldHeight) repaint(new double[] { 0, oldHeight, kept, height - oldHeight });
+        }
+    }
+
+    private void repaint(double[] rect) {
+        Checkpoints.Checkpoint from = checkpoints.latest();
+        if (from == null) renderer.repaint(rect, scene.strokes(scene.query(rect[0], rect[1], rect[2], rect[3])));
+        else from.snapshot.restore(rect,
+                scene.strokes(scene.query(scene.after(from.seq), rect[0], rect[1], rect[2], rect[3])));
+    }
+
+    /**
+     * Changes of the drawing, once applied. Erasing is only notified if something was erased, undo strokes if they
+     * removed a segment.
+     */
+    public interface Listener {
+        void stroke(Stroke stroke);
+        void erase(double x, double y);
+        void clear();
+    }
+}
@@ -0,0 +1,160 @@
+package rxcanvas.client;
+
+import static java.util.Collections.emptyList;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Drawings out of the app, as SVG or as a stroke file. The stroke file is the compact binary format in chunks of at
+ * most {@value #CHUNK} segments, each self-contained (colors inline) and prefixed by its length, after a
+ * {@code RXCV} magic and the version. So it can be decoded while it downloads and painted a chunk at a time.
+ */
+public class DrawingFile {
+    static final byte[] MAGIC = { 'R', 'X', 'C', 'V' };
+    static final int VERSION = 1;
+    static final int CHUNK = 1_000;
+    private static final CompactStrokeCodec CODEC = new CompactStrokeCodec(emptyList(), null);
+
+    /**
+     * The strokes as SVG paths, consecutive segments sharing color and width in one path. Variable width segments are
+     * filled outlines, consecutive ones sharing color in one path.
+     */
+    public static String svg(List<Stroke> strokes, int width, int height) {
+        StringBuilder out = new StringBuilder(strokes.size() * 48 + 256);
+        out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                .append("\" height=\"").append(height).append("\" viewBox=\"0 0 ").append(width).append(' ')
+                .append(height).append("\">\n<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+        Brush.Path outline = path(out);
+        String color = null; Double stroke = null; boolean fill = false;
+        for (Stroke s : strokes) {
+            boolean variable = s.widths != null;
+            if (!s.color.equals(color) || variable != fill || !variable && !s.stroke.equals(stroke)) {
+                if (color != null) out.append("\"/>\n");
+                color = s.color; stroke = s.stroke; fill = variable;
+                if (fill) out.append("<path fill=\"").append(escape(color)).append("\" d=\"");
+                else out.append("<path fill=\"none\" stroke-linecap=\"round\" stroke=\"").append(escape(color))
+                        .append("\" stroke-width=\"").append(round(stroke)).append("\" d=\"");
+            }
+            if (fill) {
+                Brush.outline(s, outline);
+                continue;
+            }
+            // like the canvas, a cubic with the first control point at the start
+            double[][] l = s.line;
+            out.append('M').append(round(l[0][0])).append(' ').append(round(l[0][1]))
+                    .append('C').append(round(l[0][0])).append(' ').append(round(l[0][1]))
+                    .append(' ').append(round(l[1][0])).append(' ').append(round(l[1][1]))
+                    .append(' ').append(round(l[2][0])).append(' ').append(round(l[2][1]));
+        }
+        if (color != null) out.append("\"/>\n");
+        return out.append("</svg>\n").toString();
+    }
+
+    private static Brush.Path path(StringBuilder out) {
+        return new Brush.Path() {
+            @Override public void moveTo(double x, double y) { point('M', x, y); }
+            @Override public void lineTo(double x, double y) { point('L', x, y); }
+            @Override public void close() { out.append('Z'); }
+            @Override public void circle(double x, double y, double r) {
+                // two half arcs, clockwise like the outlines
+                double radius = round(r), d = round(r * 2);
+                point('M', x - r, y);
+                out.append('a').append(radius).append(' ').append(radius).append(" 0 1 1 ").append(d).append(" 0");
+                out.append('a').append(radius).append(' ').append(radius).append(" 0 1 1 ").append(-d).append(" 0Z");
+            }
+            private void point(char command, double x, double y) {
+                out.append(command).append(round(x)).append(' ').append(round(y));
+            }
+        };
+    }
+
+    /** The strokes as a stroke file. */
+    public static byte[] write(List<Stroke> strokes) {
+        Bytes.Writer out = new Bytes.Writer(strokes.size() * 6 + 16);
+        for (byte b : MAGIC) out.write(b);
+        out.write(VERSION);
+        Bytes.Writer chunk = new Bytes.Writer(CHUNK * 6);
+        for (int from = 0; from < strokes.size(); from += CHUNK) {
+            chunk.reset();
+            CODEC.write(strokes.subList(from, Math.min(strokes.size(), from + CHUNK)), chunk);
+            out.writeVarint(chunk.size());
+            out.write(chunk.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Splits the stroke file, received in pieces of any size, in its chunks. Decoding is left to {@link #decode}, so
+     * a file received at once can still be decoded a chunk at a time.
+     */
+    public static ObservableTransformer<byte[], byte[]> chunks() {
+        return o -> Observable.defer(() -> {
+            Chunks chunks = new Chunks();
+            return o.concatMapIterable(chunks::add).doOnComplete(() -> {
+                if (!chunks.isEmpty()) throw new IllegalArgumentException("truncated stroke file");
+            });
+        });
+    }
+
+    /** The strokes of a chunk of a stroke file. */
+    public static List<Stroke> decode(byte[] chunk) {
+        return CODEC.read(new Bytes.Reader(chunk));
+    }
+
+    private static class Chunks {
+        private byte[] buf = new byte[64 * 1024];
+        private int size; // received, not decoded yet
+        private boolean header;
+
+        boolean isEmpty() { return size == 0; }
+
+        List<byte[]> add(byte[] piece) {
+            if (size + piece.length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + piece.length));
+            }
+            System.arraycopy(piece, 0, buf, size, piece.length);
+            size += piece.length;
+
+            int pos = 0;
+            if (!header) {
+                if (size < MAGIC.length + 1) return emptyList();
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (buf[i] != MAGIC[i]) throw new IllegalArgumentException("not a stroke file");
+                }
+                if (buf[MAGIC.length] != VERSION) {
+                    throw new IllegalArgumentException("unsupported stroke file version " + buf[MAGIC.length]);
+                }
+                header = true;
+                pos = MAGIC.length + 1;
+            }
+            List<byte[]> out = new ArrayList<>();
+            while (true) {
+                // the length varint might be incomplete too
+                int length = 0, at = pos, shift = 0;
+                boolean complete = false;
+                while (at < size) {
+                    int b = buf[at++] & 0xff;
+                    length |= (b & 0x7f) << shift;
+                    shift += 7;
+                    if ((b & 0x80) == 0) { complete = true; break; }
+                }
+                if (!complete || at + length > size) break;
+                out.add(Arrays.copyOfRange(buf, at, at + length));
+                pos = at + length;
+            }
+            System.arraycopy(buf, pos, buf, 0, size - pos);
+            size -= pos;
+            return out;
+        }
+    }
+
+    private static double round(double v) { return Math.round(v * 100) / 100.; }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+}
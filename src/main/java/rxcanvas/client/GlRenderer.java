@@ -0,0 +1,394 @@
+package rxcanvas.client;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.dom.client.CanvasElement;
+import com.google.gwt.typedarrays.shared.Float32Array;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * WebGL backend, the segments are tessellated in the vertex shader and drawn thousands per instanced draw call. Each
+ * instance is a segment split in {@value #PIECES} straight pieces, each piece a quad whose fragments are kept within
+ * half the width of the piece, so caps and joins are round without extra geometry. Variable width segments are
+ * tapered a piece at a time, each piece as wide as the width profile at its middle. The ink accumulates in an
+ * offscreen framebuffer, each frame only the new segments are uploaded and drawn into it, then it is copied to the
+ * screen and the predictions are drawn over it, so removing them costs nothing.
+ */
+public class GlRenderer implements Renderer {
+    static final int PIECES = 8;
+    private static final int FLOATS = 12; // p0, p1, p2, start and end width, rgba
+    private static final int BATCH = 4096;
+
+    // WebGL constants
+    private static final int ARRAY_BUFFER = 0x8892, STATIC_DRAW = 0x88E4, DYNAMIC_DRAW = 0x88E8;
+    private static final int FLOAT = 0x1406, UNSIGNED_BYTE = 0x1401, TRIANGLES = 0x0004, TRIANGLE_STRIP = 0x0005;
+    private static final int VERTEX_SHADER = 0x8B31, FRAGMENT_SHADER = 0x8B30;
+    private static final int COMPILE_STATUS = 0x8B81, LINK_STATUS = 0x8B82;
+    private static final int COLOR_BUFFER_BIT = 0x4000, BLEND = 0x0BE2, SCISSOR_TEST = 0x0C11;
+    private static final int SRC_ALPHA = 0x0302, ONE_MINUS_SRC_ALPHA = 0x0303;
+    private static final int TEXTURE_2D = 0x0DE1, RGBA = 0x1908;
+    private static final int TEXTURE_MIN_FILTER = 0x2801, TEXTURE_MAG_FILTER = 0x2800, NEAREST = 0x2600;
+    private static final int TEXTURE_WRAP_S = 0x2802, TEXTURE_WRAP_T = 0x2803, CLAMP_TO_EDGE = 0x812F;
+    private static final int FRAMEBUFFER = 0x8D40, COLOR_ATTACHMENT0 = 0x8CE0;
+
+    private static final String STROKE_VERTEX = ""
+            + "precision highp float;\n"
+            + "attribute vec3 a_vertex;\n" // piece, end (0 start, 1 end), side (-1, 1)
+            + "attribute vec2 a_p0, a_p1, a_p2;\n"
+            + "attribute vec2 a_width;\n"
+            + "attribute vec4 a_color;\n"
+            + "uniform vec2 u_size;\n"
+            + "uniform float u_ratio;\n"
+            + "varying vec2 v_pos, v_a, v_b;\n"
+            + "varying float v_radius;\n"
+            + "varying vec4 v_color;\n"
+            + "vec2 bezier(float t) {\n" // cubic with the first control point at the start, like the canvas
+            + "  float u = 1.0 - t;\n"
+            + "  return (u * u * u + 3.0 * u * u * t) * a_p0 + 3.0 * u * t * t * a_p1 + t * t * t * a_p2;\n"
+            + "}\n"
+            + "void main() {\n"
+            + "  v_a = bezier(a_vertex.x / " + PIECES + ".0);\n"
+            + "  v_b = bezier((a_vertex.x + 1.0) / " + PIECES + ".0);\n"
+            + "  vec2 d = v_b - v_a;\n"
+            + "  vec2 dir = dot(d, d) > 0.0 ? normalize(d) : vec2(1.0, 0.0);\n"
+            + "  float width = mix(a_width.x, a_width.y, (a_vertex.x + 0.5) / " + PIECES + ".0);\n"
+            + "  float pad = width / 2.0 + 1.0 / u_ratio;\n"
+            + "  vec2 pos = a_vertex.y > 0.5 ? v_b + dir * pad : v_a - dir * pad;\n"
+            + "  pos += vec2(-dir.y, dir.x) * a_vertex.z * pad;\n"
+            + "  v_pos = pos;\n"
+            + "  v_radius = width / 2.0;\n"
+            + "  v_color = a_color;\n"
+            + "  gl_Position = vec4(pos.x / u_size.x * 2.0 - 1.0, 1.0 - pos.y / u_size.y * 2.0, 0.0, 1.0);\n"
+            + "}\n";
+    private static final String STROKE_FRAGMENT = ""
+            + "precision highp float;\n"
+            + "uniform float u_ratio;\n"
+            + "varying vec2 v_pos, v_a, v_b;\n"
+            + "varying float v_radius;\n"
+            + "varying vec4 v_color;\n"
+            + "void main() {\n"
+            + "  vec2 ab = v_b - v_a;\n"
+            + "  float l = dot(ab, ab);\n"
+            + "  float t = l > 0.0 ? clamp(dot(v_pos - v_a, ab) / l, 0.0, 1.0) : 0.0;\n"
+            + "  float alpha = clamp((v_radius - length(v_pos - v_a - ab * t)) * u_ratio + 0.5, 0.0, 1.0);\n"
+            + "  if (alpha <= 0.0) discard;\n"
+            + "  gl_FragColor = vec4(v_color.rgb, v_color.a * alpha);\n"
+            + "}\n";
+    private static final String COPY_VERTEX = ""
+            + "attribute vec2 a_corner;\n"
+            + "varying vec2 v_uv;\n"
+            + "void main() {\n"
+            + "  v_uv = a_corner * 0.5 + 0.5;\n"
+            + "  gl_Position = vec4(a_corner, 0.0, 1.0);\n"
+            + "}\n";
+    private static final String COPY_FRAGMENT = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D u_ink;\n"
+            + "varying vec2 v_uv;\n"
+            + "void main() { gl_FragColor = texture2D(u_ink, v_uv); }\n";
+
+    private final Gl gl;
+    private final Instancing instancing;
+    private double ratio;
+    private double width, height;
+    private final Object strokeProgram, copyProgram;
+    private final Object pieces, corners, instanceBuffer;
+    private final Object ink, inkTexture;
+    private final int[] strokeAttributes = new int[6]; // a_p0, a_p1, a_p2, a_width, a_color, a_vertex
+    private final Object sizeUniform, ratioUniform, inkUniform;
+    private final int cornerAttribute;
+    private final Float32Array instances = TypedArrays.createFloat32Array(BATCH * FLOATS);
+    private final Map<String, float[]> colors = new HashMap<>();
+    private final List<Object> queue = new ArrayList<>(); // Stroke or Region
+    private final List<Stroke> predictions = new ArrayList<>();
+    private int size;
+    private boolean scheduled;
+
+    public GlRenderer(Gl gl, double ratio) {
+        this.gl = gl;
+        this.instancing = (Instancing) gl.getExtension("ANGLE_instanced_arrays");
+
+        strokeProgram = program(STROKE_VERTEX, STROKE_FRAGMENT);
+        String[] names = { "a_p0", "a_p1", "a_p2", "a_width", "a_color", "a_vertex" };
+        for (int i = 0; i < names.length; i++) strokeAttributes[i] = gl.getAttribLocation(strokeProgram, names[i]);
+        sizeUniform = gl.getUniformLocation(strokeProgram, "u_size");
+        ratioUniform = gl.getUniformLocation(strokeProgram, "u_ratio");
+        copyProgram = program(COPY_VERTEX, COPY_FRAGMENT);
+        inkUniform = gl.getUniformLocation(copyProgram, "u_ink");
+        cornerAttribute = gl.getAttribLocation(copyProgram, "a_corner");
+
+        // 2 triangles per piece, each vertex as {piece, end, side}
+        float[] vertices = new float[PIECES * 6 * 3];
+        int[][] quad = { { 0, -1 }, { 1, -1 }, { 0, 1 }, { 0, 1 }, { 1, -1 }, { 1, 1 } };
+        for (int p = 0, i = 0; p < PIECES; p++) {
+            for (int[] corner : quad) {
+                vertices[i++] = p; vertices[i++] = corner[0]; vertices[i++] = corner[1];
+            }
+        }
+        pieces = buffer(vertices, STATIC_DRAW);
+        corners = buffer(new float[] { -1, -1, 1, -1, -1, 1, 1, 1 }, STATIC_DRAW);
+        instanceBuffer = gl.createBuffer();
+        gl.bindBuffer(ARRAY_BUFFER, instanceBuffer);
+        gl.bufferData(ARRAY_BUFFER, BATCH * FLOATS * 4, DYNAMIC_DRAW);
+
+        // the ink layer, white like the page
+        inkTexture = gl.createTexture();
+        gl.bindTexture(TEXTURE_2D, inkTexture);
+        gl.texParameteri(TEXTURE_2D, TEXTURE_MIN_FILTER, NEAREST);
+        gl.texParameteri(TEXTURE_2D, TEXTURE_MAG_FILTER, NEAREST);
+        gl.texParameteri(TEXTURE_2D, TEXTURE_WRAP_S, CLAMP_TO_EDGE);
+        gl.texParameteri(TEXTURE_2D, TEXTURE_WRAP_T, CLAMP_TO_EDGE);
+        ink = gl.createFramebuffer();
+        gl.clearColor(1, 1, 1, 1);
+        gl.blendFunc(SRC_ALPHA, ONE_MINUS_SRC_ALPHA);
+        allocate(ratio);
+    }
+
+    /** The ink texture can't be resized, it is reallocated (blank) and must be repainted. */
+    @Override public boolean resize(double width, double height, double ratio) {
+        gl.canvas.setWidth((int) Math.round(width * ratio));
+        gl.canvas.setHeight((int) Math.round(height * ratio));
+        allocate(ratio);
+        return false;
+    }
+
+    /** Copying the ink texture would double its memory in the GPU, undo repaints from the scene. */
+    @Override public Snapshot snapshot() { return null; }
+
+    /** Allocates the ink texture to the drawing buffer size, and clears it. */
+    private void allocate(double ratio) {
+        int w = gl.drawingBufferWidth, h = gl.drawingBufferHeight;
+        this.ratio = ratio;
+        this.width = w / ratio;
+        this.height = h / ratio;
+        gl.bindTexture(TEXTURE_2D, inkTexture);
+        gl.texImage2D(TEXTURE_2D, 0, RGBA, w, h, 0, RGBA, UNSIGNED_BYTE, null);
+        gl.bindFramebuffer(FRAMEBUFFER, ink);
+        gl.framebufferTexture2D(FRAMEBUFFER, COLOR_ATTACHMENT0, TEXTURE_2D, inkTexture, 0);
+        gl.viewport(0, 0, w, h);
+        gl.clear(COLOR_BUFFER_BIT);
+    }
+
+    /** A WebGL context supporting instancing, or null. Once created, the canvas cannot get a 2d context. */
+    public static native Gl context(CanvasElement canvas) /*-{
+        var gl = canvas.getContext('webgl', { alpha: false, antialias: false, depth: false });
+        return gl && gl.getExtension('ANGLE_instanced_arrays') ? gl : null;
+    }-*/;
+
+    @Override public void stroke(Stroke stroke) {
+        queue.add(stroke);
+        schedule();
+    }
+
+    @Override public void predict(Stroke stroke) {
+        predictions.add(stroke);
+        schedule();
+    }
+
+    @Override public void repaint(double[] rect, List<Stroke> strokes) {
+        queue.add(new CanvasRenderer.Region(rect, strokes));
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        AnimationScheduler.get().requestAnimationFrame(timestamp -> flush());
+    }
+
+    private void flush() {
+        scheduled = false;
+        double start = Metrics.now();
+        gl.bindFramebuffer(FRAMEBUFFER, ink);
+        gl.enable(BLEND);
+        for (Object op : queue) {
+            if (op instanceof Stroke) add((Stroke) op);
+            else {
+                draw();
+                CanvasRenderer.Region region = (CanvasRenderer.Region) op;
+                double[] r = region.rect;
+                if (r != null) {
+                    // scissor works in device pixels from the bottom left corner
+                    int x = (int) Math.floor(r[0] * ratio), y = (int) Math.floor((height - r[1] - r[3]) * ratio);
+                    gl.enable(SCISSOR_TEST);
+                    gl.scissor(x, y, (int) Math.ceil((r[0] + r[2]) * ratio) - x,
+                            (int) Math.ceil((height - r[1]) * ratio) - y);
+                }
+                gl.clear(COLOR_BUFFER_BIT);
+                for (Stroke stroke : region.strokes) add(stroke);
+                draw();
+                gl.disable(SCISSOR_TEST);
+            }
+        }
+        draw();
+        queue.clear();
+
+        // the screen isn't preserved between frames, copy the ink and draw the predictions over it
+        gl.bindFramebuffer(FRAMEBUFFER, null);
+        gl.disable(BLEND);
+        gl.useProgram(copyProgram);
+        gl.uniform1i(inkUniform, 0);
+        gl.bindBuffer(ARRAY_BUFFER, corners);
+        gl.enableVertexAttribArray(cornerAttribute);
+        gl.vertexAttribPointer(cornerAttribute, 2, FLOAT, false, 0, 0);
+        gl.drawArrays(TRIANGLE_STRIP, 0, 4);
+        gl.disableVertexAttribArray(cornerAttribute);
+        if (!predictions.isEmpty()) {
+            gl.enable(BLEND);
+            for (Stroke prediction : predictions) add(prediction);
+            draw();
+            predictions.clear();
+            schedule(); // to remove them
+        }
+        Metrics.frame(start);
+    }
+
+    private void add(Stroke stroke) {
+        if (size == BATCH) draw();
+        float[] color = color(stroke.color);
+        int o = size++ * FLOATS;
+        for (int i = 0; i < 3; i++) {
+            instances.set(o + i * 2, (float) stroke.line[i][0]);
+            instances.set(o + i * 2 + 1, (float) stroke.line[i][1]);
+        }
+        instances.set(o + 6, (float) (stroke.widths != null ? stroke.widths[0] : stroke.stroke));
+        instances.set(o + 7, (float) (stroke.widths != null ? stroke.widths[1] : stroke.stroke));
+        for (int i = 0; i < 4; i++) instances.set(o + 8 + i, color[i]);
+    }
+
+    /** Draws the added segments in a single instanced call. */
+    private void draw() {
+        if (size == 0) return;
+        gl.useProgram(strokeProgram);
+        gl.uniform2f(sizeUniform, width, height);
+        gl.uniform1f(ratioUniform, ratio);
+        gl.bindBuffer(ARRAY_BUFFER, pieces);
+        int vertex = strokeAttributes[5];
+        gl.enableVertexAttribArray(vertex);
+        gl.vertexAttribPointer(vertex, 3, FLOAT, false, 0, 0);
+        gl.bindBuffer(ARRAY_BUFFER, instanceBuffer);
+        gl.bufferSubData(ARRAY_BUFFER, 0, instances.subarray(0, size * FLOATS));
+        int[] sizes = { 2, 2, 2, 2, 4 };
+        for (int i = 0, offset = 0; i < sizes.length; offset += sizes[i++]) {
+            gl.enableVertexAttribArray(strokeAttributes[i]);
+            gl.vertexAttribPointer(strokeAttributes[i], sizes[i], FLOAT, false, FLOATS * 4, offset * 4);
+            instancing.vertexAttribDivisorANGLE(strokeAttributes[i], 1);
+        }
+        instancing.drawArraysInstancedANGLE(TRIANGLES, 0, PIECES * 6, size);
+        for (int i = 0; i < sizes.length; i++) {
+            instancing.vertexAttribDivisorANGLE(strokeAttributes[i], 0);
+            gl.disableVertexAttribArray(strokeAttributes[i]);
+        }
+        gl.disableVertexAttribArray(vertex);
+        size = 0;
+    }
+
+    /** The color as rgba floats, any css color is normalized by a canvas to '#rrggbb' (opaque) or 'rgba(...)'. */
+    private float[] color(String css) {
+        float[] out = colors.get(css);
+        if (out != null) return out;
+        String hex = normalize(css);
+        out = new float[] { 0, 0, 0, 1 };
+        if (hex.length() == 7 && hex.charAt(0) == '#') {
+            for (int i = 0; i < 3; i++) out[i] = Integer.parseInt(hex.substring(1 + i * 2, 3 + i * 2), 16) / 255f;
+        }
+        colors.put(css, out);
+        return out;
+    }
+
+    private static native String normalize(String color) /*-{
+        var ctx = $doc.createElement('canvas').getContext('2d');
+        ctx.fillStyle = color;
+        return ctx.fillStyle;
+    }-*/;
+
+    private Object buffer(float[] data, int usage) {
+        Float32Array array = TypedArrays.createFloat32Array(data.length);
+        array.set(data);
+        Object buffer = gl.createBuffer();
+        gl.bindBuffer(ARRAY_BUFFER, buffer);
+        gl.bufferData(ARRAY_BUFFER, array, usage);
+        return buffer;
+    }
+
+    private Object program(String vertex, String fragment) {
+        Object program = gl.createProgram();
+        gl.attachShader(program, shader(VERTEX_SHADER, vertex));
+        gl.attachShader(program, shader(FRAGMENT_SHADER, fragment));
+        gl.linkProgram(program);
+        if (!gl.getProgramParameter(program, LINK_STATUS)) {
+            throw new IllegalStateException("program link error: " + gl.getProgramInfoLog(program));
+        }
+        return program;
+    }
+
+    private Object shader(int type, String source) {
+        Object shader = gl.createShader(type);
+        gl.shaderSource(shader, source);
+        gl.compileShader(shader);
+        if (!gl.getShaderParameter(shader, COMPILE_STATUS)) {
+            throw new IllegalStateException("shader compile error: " + gl.getShaderInfoLog(shader));
+        }
+        return shader;
+    }
+
+    /** The subset of WebGL used, handles (shaders, buffers...) are opaque objects. */
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "WebGLRenderingContext")
+    public static class Gl {
+        public CanvasElement canvas;
+        public int drawingBufferWidth, drawingBufferHeight;
+        public native Object getExtension(String name);
+        public native Object createShader(int type);
+        public native void shaderSource(Object shader, String source);
+        public native void compileShader(Object shader);
+        public native boolean getShaderParameter(Object shader, int name);
+        public native String getShaderInfoLog(Object shader);
+        public native Object createProgram();
+        public native void attachShader(Object program, Object shader);
+        public native void linkProgram(Object program);
+        public native boolean getProgramParameter(Object program, int name);
+        public native String getProgramInfoLog(Object program);
+        public native void useProgram(Object program);
+        public native int getAttribLocation(Object program, String name);
+        public native Object getUniformLocation(Object program, String name);
+        public native void uniform1i(Object location, int v);
+        public native void uniform1f(Object location, double v);
+        public native void uniform2f(Object location, double x, double y);
+        public native Object createBuffer();
+        public native void bindBuffer(int target, Object buffer);
+        public native void bufferData(int target, double size, int usage);
+        public native void bufferData(int target, Object data, int usage);
+        public native void bufferSubData(int target, double offset, Object data);
+        public native void enableVertexAttribArray(int index);
+        public native void disableVertexAttribArray(int index);
+        public native void vertexAttribPointer(
+                int index, int size, int type, boolean normalized, int stride, int offset);
+        public native Object createTexture();
+        public native void bindTexture(int target, Object texture);
+        public native void texImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                int format, int type, Object pixels);
+        public native void texParameteri(int target, int name, int value);
+        public native Object createFramebuffer();
+        public native void bindFramebuffer(int target, Object framebuffer);
+        public native void framebufferTexture2D(int target, int attachment, int texTarget, Object texture, int level);
+        public native void viewport(int x, int y, int width, int height);
+        public native void scissor(int x, int y, int width, int height);
+        public native void clearColor(double r, double g, double b, double a);
+        public native void clear(int mask);
+        public native void enable(int capability);
+        public native void disable(int capability);
+        public native void blendFunc(int src, int dst);
+        public native void drawArrays(int mode, int first, int count);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Instancing {
+        public native void drawArraysInstancedANGLE(int mode, int first, int count, int instances);
+        public native void vertexAttribDivisorANGLE(int index, int divisor);
+    }
+}
@@ -0,0 +1,90 @@
+package rxcanvas.client;
+
+import static java.lang.Boolean.TRUE;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Undo and redo of the local changes, grouped from pen down to pen up, up to {@value #DEPTH} groups. Undoing a group
+ * removes the segments it painted, shared as {@link Stroke#undo undo} strokes so the other pages remove them too, and
+ * paints again the ones it erased, which were never shared. The drawing repaints the undone area from its latest
+ * checkpoint, taken on pen up when due, so an undo costs the segments painted since, not the whole history.
+ */
+public class History {
+    static final int DEPTH = 100;
+
+    private final Drawing drawing;
+    private final Consumer<Stroke> share;
+    private final ArrayDeque<Group> done = new ArrayDeque<>(), undone = new ArrayDeque<>();
+    private Group current = new Group();
+
+    /** The strokes to share with the other pages are given to {@code share}. */
+    public History(Drawing drawing, Consumer<Stroke> share) {
+        this.drawing = drawing;
+        this.share = share;
+    }
+
+    public void stroke(Stroke stroke) {
+        drawing.stroke(stroke);
+        current.painted.add(stroke);
+    }
+
+    public void predict(Stroke stroke) {
+        drawing.predict(stroke);
+    }
+
+    public void erase(double x, double y) {
+        current.erased.addAll(drawing.erase(x, y));
+    }
+
+    /** Closes the group, on pen up. */
+    public void commit() {
+        if (!current.painted.isEmpty() || !current.erased.isEmpty()) {
+            done.addLast(current);
+            if (done.size() > DEPTH) done.removeFirst();
+            undone.clear();
+            current = new Group();
+        }
+        drawing.checkpoint();
+    }
+
+    public void undo() {
+        commit();
+        Group group = done.pollLast();
+        if (group == null) return;
+        List<Stroke> removed = new ArrayList<>(group.painted.size());
+        for (int i = group.painted.size() - 1; i >= 0; i--) removed.add(undo(group.painted.get(i)));
+        drawing.strokes(removed);
+        removed.forEach(share);
+        drawing.strokes(group.erased);
+        undone.addLast(group);
+    }
+
+    public void redo() {
+        Group group = undone.pollLast();
+        if (group == null) return;
+        List<Stroke> removed = new ArrayList<>(group.erased.size());
+        for (Stroke stroke : group.erased) removed.add(undo(stroke));
+        drawing.strokes(removed);
+        drawing.strokes(group.painted);
+        group.painted.forEach(share);
+        done.addLast(group);
+    }
+
+    private static Stroke undo(Stroke stroke) {
+        Stroke out = new Stroke();
+        out.color = stroke.color;
+        out.stroke = stroke.stroke;
+        out.line = stroke.line;
+        out.undo = TRUE;
+        return out;
+    }
+
+    private static class Group {
+        final List<Stroke> painted = new ArrayList<>();
+        final List<Stroke> erased = new ArrayList<>();
+    }
+}
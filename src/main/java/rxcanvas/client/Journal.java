@@ -0,0 +1,311 @@
+package rxcanvas.client;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Append only journal of the drawing changes, persisted in IndexedDB. Changes are buffered and each batch written in
+ * a single transaction, and once the journal has {@value #COMPACT_OPS} changes (or after a clear) the live scene is
+ * saved as a snapshot replacing it. On start the snapshot is painted at once and the journal tail replayed in chunks,
+ * one per frame, nothing is written until then.
+ */
+public class Journal implements Drawing.Listener {
+    static final String DB = "rxcanvas", SNAPSHOT = "snapshot", JOURNAL = "journal", LATEST = "latest";
+    static final int VERSION = 1;
+    static final int COMPACT_OPS = 5_000;
+    static final int REPLAY_CHUNK = 200;
+    private static final String STROKES = "s", ERASE = "e";
+
+    private final Drawing drawing;
+    private final StrokeCodec codec;
+    private final List<Object> pending = new ArrayList<>(); // Stroke or double[] erase point
+    private Database db;
+    private boolean restored;
+    private boolean replayed; // saving before the tail is replayed would compact a partial scene
+    private boolean replaying;
+    private boolean cleared;
+    private int journaled; // changes in the journal
+
+    public Journal(Drawing drawing, StrokeCodec codec) {
+        this.drawing = drawing;
+        this.codec = codec;
+    }
+
+    public static native boolean isSupported() /*-{
+        return !!$wnd.indexedDB;
+    }-*/;
+
+    @Override public void stroke(Stroke stroke) {
+        if (!replaying) pending.add(stroke);
+    }
+
+    @Override public void erase(double x, double y) {
+        if (!replaying) pending.add(new double[] { x, y });
+    }
+
+    /** Nothing before matters, the next save compacts. */
+    @Override public void clear() {
+        if (replaying) return;
+        pending.clear();
+        cleared = true;
+    }
+
+    /**
+     * Paints the saved drawing and starts journaling its changes. Completes once the tail is replayed, meanwhile the
+     * new changes are already journaled. Only restores once, resubscribing just reopens the database.
+     */
+    public Completable restore() {
+        return open().flatMapCompletable(db -> {
+            this.db = db;
+            if (restored) return Completable.complete();
+            restored = true;
+            Transaction tx = db.transaction(new String[] { SNAPSHOT, JOURNAL }, "readonly");
+            Request snapshot = tx.objectStore(SNAPSHOT).get(LATEST);
+            Request tail = tx.objectStore(JOURNAL).getAll();
+            return complete(tx).andThen(Completable.defer(() -> {
+                Snapshot saved = (Snapshot) snapshot.result;
+                Record[] records = (Record[]) tail.result;
+                journaled = 0; // counted while replayed
+                replaying = true;
+                if (saved != null) for (Stroke stroke : codec.decode(saved.strokes)) drawing.stroke(stroke);
+                replaying = false;
+                drawing.listen(this);
+                return Completable.create(s -> new Replay(s, records).next());
+            }));
+        });
+    }
+
+    /** Writes the pending changes every {@code window}, and compacts the journal when due, once restored. */
+    public Observable<?> autosave(long window, TimeUnit unit) {
+        return Observable.interval(window, unit).concatMapCompletable(n -> save()).toObservable();
+    }
+
+    /**
+     * Emits each time the page is hidden, the last moment the page reliably runs, as it may then be frozen or unloaded
+     * without another event.
+     */
+    public static Observable<Object> hidden() {
+        return Observable.create(s -> {
+            Document doc = document();
+            Listener listener = e -> {
+                if ("hidden".equals(doc.visibilityState)) s.onNext(e);
+            };
+            doc.addEventListener("visibilitychange", listener);
+            s.setCancellable(() -> doc.removeEventListener("visibilitychange", listener));
+        });
+    }
+
+    /**
+     * Writes the pending changes in one transaction. Started while the page unloads, the write is best-effort, the
+     * browser may discard it before it commits. Until the journal is restored the changes just wait.
+     */
+    public Completable save() {
+        return Completable.defer(() -> {
+            if (!replayed || pending.isEmpty() && !cleared) return Completable.complete();
+            if (cleared || journaled + pending.size() >= COMPACT_OPS) return compact();
+            List<Record> records = records(pending);
+            journaled += pending.size();
+            pending.clear();
+            Transaction tx = db.transaction(new String[] { JOURNAL }, "readwrite");
+            Store journal = tx.objectStore(JOURNAL);
+            for (Record record : records) journal.add(record);
+            return complete(tx);
+        });
+    }
+
+    /** Replaces the snapshot and the journal with the live segments, once restored. */
+    public Completable compact() {
+        return Completable.defer(() -> {
+            if (!replayed) return Completable.complete();
+            pending.clear();
+            cleared = false;
+            Snapshot snapshot = new Snapshot();
+            snapshot.strokes = codec.encode(drawing.scene().strokes());
+            Transaction tx = db.transaction(new String[] { SNAPSHOT, JOURNAL }, "readwrite");
+            tx.objectStore(SNAPSHOT).put(snapshot, LATEST);
+            tx.objectStore(JOURNAL).clear();
+            journaled = 0;
+            return complete(tx);
+        });
+    }
+
+    /** Groups each run of changes of the same kind in a record. */
+    private List<Record> records(List<Object> changes) {
+        List<Record> out = new ArrayList<>();
+        for (int i = 0; i < changes.size(); ) {
+            Record record = new Record();
+            if (changes.get(i) instanceof double[]) {
+                List<Double> points = new ArrayList<>();
+                for (; i < changes.size() && changes.get(i) instanceof double[]; i++) {
+                    double[] p = (double[]) changes.get(i);
+                    points.add(p[0]); points.add(p[1]);
+                }
+                record.op = ERASE;
+                record.points = new double[points.size()];
+                for (int j = 0; j < points.size(); j++) record.points[j] = points.get(j);
+            } else {
+                List<Stroke> strokes = new ArrayList<>();
+                for (; i < changes.size() && changes.get(i) instanceof Stroke; i++) {
+                    strokes.add((Stroke) changes.get(i));
+                }
+                record.op = STROKES;
+                record.strokes = codec.encode(strokes);
+            }
+            out.add(record);
+        }
+        return out;
+    }
+
+    /** Applies the record, returns the number of changes. */
+    private int apply(Record record) {
+        if (ERASE.equals(record.op)) {
+            for (int i = 0; i < record.points.length; i += 2) drawing.erase(record.points[i], record.points[i + 1]);
+            return record.points.length / 2;
+        }
+        List<Stroke> strokes = codec.decode(record.strokes);
+        drawing.strokes(strokes);
+        return strokes.size();
+    }
+
+    /** Applies the records {@value #REPLAY_CHUNK} per frame, so startup isn't blocked by a long journal. */
+    private class Replay implements AnimationCallback {
+        final CompletableEmitter s;
+        final Record[] records;
+        int next;
+
+        Replay(CompletableEmitter s, Record[] records) {
+            this.s = s;
+            this.records = records;
+        }
+
+        void next() {
+            if (next < records.length) AnimationScheduler.get().requestAnimationFrame(this);
+            else {
+                replayed = true;
+                s.onComplete();
+            }
+        }
+
+        /** Goes on if unsubscribed, as restoring only happens once and saving waits for it. */
+        @Override public void execute(double timestamp) {
+            replaying = true;
+            try {
+                for (int end = Math.min(records.length, next + REPLAY_CHUNK); next < end; next++) {
+                    journaled += apply(records[next]);
+                }
+            } finally {
+                replaying = false;
+            }
+            next();
+        }
+    }
+
+    private static Single<Database> open() {
+        return Single.create(s -> {
+            OpenRequest request = indexedDB().open(DB, VERSION);
+            request.onupgradeneeded = e -> {
+                Database db = (Database) request.result;
+                db.createObjectStore(SNAPSHOT, null);
+                StoreOptions options = new StoreOptions();
+                options.autoIncrement = true;
+                db.createObjectStore(JOURNAL, options);
+            };
+            request.onsuccess = e -> s.onSuccess((Database) request.result);
+            request.onerror = e -> s.onError(new IllegalStateException("journal open error: " + request.error));
+        });
+    }
+
+    private static Completable complete(Transaction tx) {
+        return Completable.create(s -> {
+            tx.oncomplete = e -> s.onComplete();
+            tx.onerror = e -> s.onError(new IllegalStateException("journal transaction error: " + tx.error));
+            tx.onabort = tx.onerror;
+        });
+    }
+
+    private static native Factory indexedDB() /*-{
+        return $wnd.indexedDB;
+    }-*/;
+
+    private static native Document document() /*-{
+        return $doc;
+    }-*/;
+
+    @FunctionalInterface @JsFunction interface Listener {
+        void apply(Object event);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class Document {
+        public String visibilityState;
+        public native void addEventListener(String type, Listener listener);
+        public native void removeEventListener(String type, Listener listener);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "IDBFactory")
+    static class Factory {
+        public native OpenRequest open(String name, int version);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "IDBRequest")
+    static class Request {
+        public Object result;
+        public Object error;
+        public Listener onsuccess, onerror;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "IDBOpenDBRequest")
+    static class OpenRequest extends Request {
+        public Listener onupgradeneeded;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "IDBDatabase")
+    static class Database {
+        public native Store createObjectStore(String name, StoreOptions options);
+        public native Transaction transaction(String[] stores, String mode);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "IDBTransaction")
+    static class Transaction {
+        public Object error;
+        public Listener oncomplete, onerror, onabort;
+        public native Store objectStore(String name);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "IDBObjectStore")
+    static class Store {
+        public native Request add(Object value);
+        public native Request put(Object value, Object key);
+        public native Request get(Object key);
+        public native Request getAll();
+        public native Request clear();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    static class StoreOptions {
+        public boolean autoIncrement;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Snapshot {
+        public String strokes;
+    }
+
+    /** A run of changes, the strokes encoded or the erase points as {x0, y0, x1, y1...}. */
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Record {
+        public String op;
+        public String strokes;
+        public double[] points;
+    }
+}
@@ -0,0 +1,30 @@
+package rxcanvas.client;
+
+import static java.lang.Boolean.TRUE;
+import static java.util.Arrays.asList;
+import static rxcanvas.client.RxCanvas.isArray;
+import static rxcanvas.client.RxCanvas.parse;
+import static rxcanvas.client.RxCanvas.stringify;
+
+import java.util.List;
+
+/** Plain {@code JSON.stringify} of the native strokes, readable and compatible with previous receivers. */
+public class JsonStrokeCodec implements StrokeCodec {
+    public static final JsonStrokeCodec INSTANCE = new JsonStrokeCodec();
+
+    @Override public String encode(List<Stroke> strokes) {
+        return stringify(strokes.toArray(new Stroke[0]));
+    }
+
+    /** Messages are either a single stroke or, since batching, an array of strokes. */
+    @Override public List<Stroke> decode(String message) {
+        Object json = parse(message);
+        return isArray(json) ? asList((Stroke[]) json) : asList((Stroke) json);
+    }
+
+    /** The envelope, the color and the doubles at full precision, plus the widths and the undo flag if set. */
+    @Override public int cost(Stroke stroke) {
+        return 40 + stroke.color.length() + 6 * 20
+                + (stroke.widths != null ? 12 + 2 * 20 : 0) + (TRUE.equals(stroke.undo) ? 12 : 0);
+    }
+}
@@ -0,0 +1,157 @@
+package rxcanvas.client;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import io.reactivex.Completable;
+import io.reactivex.CompletableTransformer;
+import io.reactivex.Observable;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Histograms of the pipeline timings, always recorded as it is just a few increments per sample. Input to ink is
+ * measured from the pointer event time stamp to the end of the frame painting its ink, and the cast round-trip from
+ * sending a message to its acknowledgement. Use '?metrics=true' to show them in an overlay, and call
+ * {@code rxcanvasMetrics()} in the console to dump them as JSON.
+ */
+public class Metrics {
+    public static final Histogram INPUT_TO_INK = new Histogram("inputToInk", "ms");
+    public static final Histogram FRAME = new Histogram("frame", "ms");
+    public static final Histogram CAST_RTT = new Histogram("castRtt", "ms");
+    public static final Histogram SEND_QUEUE = new Histogram("sendQueue", "strokes");
+    private static final Histogram[] ALL = { INPUT_TO_INK, FRAME, CAST_RTT, SEND_QUEUE };
+    /** The frames since its last reset, sampled and reset by {@link Resolution} to adapt the pixel ratio. */
+    public static final Histogram RECENT_FRAMES = new Histogram("recentFrames", "ms");
+
+    private static double lastInput = Double.NaN;
+    private static double pendingInput = Double.NaN;
+
+    /** An input event which might produce ink, with its time stamp (same origin as {@link #now()}). */
+    public static void input(double timeStamp) { lastInput = timeStamp; }
+
+    /** Ink for the last input has been queued, it is painted at the end of the next frame. */
+    public static void ink() {
+        if (Double.isNaN(pendingInput)) pendingInput = lastInput;
+    }
+
+    /** A renderer frame, started at {@code start}, has been painted. */
+    public static void frame(double start) {
+        double end = now();
+        FRAME.add(end - start);
+        RECENT_FRAMES.add(end - start);
+        if (Double.isNaN(pendingInput)) return;
+        INPUT_TO_INK.add(end - pendingInput);
+        pendingInput = Double.NaN;
+    }
+
+    /** Records the time from subscription to completion of each subscription. */
+    public static CompletableTransformer timed(Histogram histogram) {
+        return c -> Completable.defer(() -> {
+            double start = now();
+            return c.doOnComplete(() -> histogram.add(now() - start));
+        });
+    }
+
+    public static void reset() {
+        for (Histogram h : ALL) h.reset();
+    }
+
+    public static String dump() {
+        Summary[] out = new Summary[ALL.length];
+        for (int i = 0; i < ALL.length; i++) out[i] = ALL[i].summary();
+        return RxCanvas.stringify(out);
+    }
+
+    /** Shows the histograms in a corner of the page, refreshed every second while subscribed. */
+    public static Observable<?> overlay() {
+        return Observable.defer(() -> {
+            Element pre = Document.get().createPreElement();
+            pre.setClassName("metrics");
+            Document.get().getBody().appendChild(pre);
+            return Observable.interval(0, 1, SECONDS).doOnNext(n -> {
+                StringBuilder text = new StringBuilder();
+                for (Histogram h : ALL) text.append(h).append('\n');
+                pre.setInnerText(text.toString());
+            }).doFinally(pre::removeFromParent);
+        });
+    }
+
+    /** Exports {@code rxcanvasMetrics()} and {@code rxcanvasMetricsReset()} to the page. */
+    public static native void export() /*-{
+        $wnd.rxcanvasMetrics = $entry(function () { return @rxcanvas.client.Metrics::dump()(); });
+        $wnd.rxcanvasMetricsReset = $entry(function () { @rxcanvas.client.Metrics::reset()(); });
+    }-*/;
+
+    public static native double now() /*-{
+        return $wnd.performance.now();
+    }-*/;
+
+    /** Log-linear buckets, 4 per power of two from 1/4 to 2^16, so percentiles are within a 19% error. */
+    public static class Histogram {
+        private static final int SUB = 4, OFFSET = 8, BUCKETS = 18 * SUB;
+
+        private final String name;
+        private final String unit;
+        private final int[] counts = new int[BUCKETS];
+        private int count;
+        private double sum;
+        private double max;
+
+        public Histogram(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public void add(double value) {
+            int bucket = value <= 0 ? 0 : (int) Math.floor(Math.log(value) / Math.log(2) * SUB) + OFFSET;
+            counts[Math.max(0, Math.min(BUCKETS - 1, bucket))]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        /** Upper bound of the bucket containing the {@code p} (0..1) percentile, 0 if empty. */
+        public double percentile(double p) {
+            int target = (int) Math.ceil(p * count), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) return Math.min(max, Math.pow(2, (i + 1 - OFFSET) / (double) SUB));
+            }
+            return 0;
+        }
+
+        public int count() { return count; }
+
+        public double mean() { return count == 0 ? 0 : sum / count; }
+
+        public void reset() {
+            for (int i = 0; i < BUCKETS; i++) counts[i] = 0;
+            count = 0; sum = 0; max = 0;
+        }
+
+        Summary summary() {
+            Summary out = new Summary();
+            out.name = name; out.unit = unit; out.count = count;
+            out.mean = round(mean()); out.p50 = round(percentile(.5));
+            out.p95 = round(percentile(.95)); out.p99 = round(percentile(.99)); out.max = round(max);
+            return out;
+        }
+
+        @Override public String toString() {
+            return name + " (" + unit + ") n=" + count + " mean=" + round(mean()) + " p50=" + round(percentile(.5))
+                    + " p95=" + round(percentile(.95)) + " p99=" + round(percentile(.99)) + " max=" + round(max);
+        }
+
+        private static double round(double v) { return Math.round(v * 10) / 10.; }
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Summary {
+        public String name;
+        public String unit;
+        public int count;
+        public double mean, p50, p95, p99, max;
+    }
+}
@@ -0,0 +1,33 @@
+package rxcanvas.client;
+
+import java.util.List;
+
+/** Paints the drawing, implementations queue the operations and apply them once per animation frame. */
+public interface Renderer {
+
+    void stroke(Stroke stroke);
+
+    /** Provisional ink drawn only in the next frame, the pixels below are restored in the following one. */
+    void predict(Stroke stroke);
+
+    /** Clears the area {x, y, w, h}, or everything if null, and paints the strokes clipped to it. */
+    void repaint(double[] rect, List<Stroke> strokes);
+
+    /**
+     * Resizes the backing store to {@code width x height} css px, at {@code ratio} device px per css px. Returns true
+     * if the ink is kept, so only the newly exposed area needs to be painted, or false if it must be repainted.
+     */
+    boolean resize(double width, double height, double ratio);
+
+    /** A copy of the ink, once the queued operations are applied, or null if the renderer can't copy it. */
+    Snapshot snapshot();
+
+    /** Pixels copied by a renderer. */
+    interface Snapshot {
+        /** Memory used, in bytes. */
+        double bytes();
+
+        /** Like {@link #repaint}, but the area is restored from the snapshot instead of cleared. */
+        void restore(double[] rect, List<Stroke> strokes);
+    }
+}
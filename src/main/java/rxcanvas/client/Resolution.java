@@ -0,0 +1,150 @@
+package rxcanvas.client;
+
+import static io.reactivex.Observable.empty;
+import static io.reactivex.Observable.merge;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.event.logical.shared.ResizeEvent;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Window;
+import io.reactivex.Observable;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsMethod;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Size of the canvas in css px and pixel ratio of its backing store. Follows the size of the container (window
+ * resizes and orientation changes) and the device pixel ratio (zoom, moving the window to another screen), caps the
+ * backing store to a number of pixels, and if adaptive lowers the ratio while the frames exceed the budget, raising
+ * it back once they are well within it. Filling a 4K backing store is too much for a TV dongle, and ink at a lower
+ * ratio is just slightly blurry. Each change repaints the whole canvas, so the ratio is held for a few windows after
+ * each step, twice as long each time a raised ratio has to be lowered again, so it settles instead of flipping.
+ */
+public class Resolution {
+    static final double FRAME_BUDGET_MS = 8; // leaves half the frame to input handling
+    static final long ADAPT_WINDOW_MS = 2_000;
+    static final int ADAPT_MIN_FRAMES = 20;
+    static final double STEP = 0.75;
+    static final int HOLD_WINDOWS = 5, MAX_HOLD_WINDOWS = 60;
+    static final long RESIZE_DEBOUNCE_MS = 100;
+
+    private final Element container;
+    private final double maxPixels;
+    private int width, height;
+    private double deviceRatio;
+    private double scale = 1; // adaptive, never above 1
+    private int hold; // windows left before the ratio may be raised
+    private int backoff = HOLD_WINDOWS; // hold after lowering the ratio
+    private boolean raised; // the ratio was raised and hasn't held a whole hold yet
+
+    /** Measures the container, {@code maxPixels} caps the backing store size (0 no cap). */
+    public Resolution(Element container, double maxPixels) {
+        this.container = container;
+        this.maxPixels = maxPixels;
+        measure();
+    }
+
+    public int width() { return width; }
+
+    public int height() { return height; }
+
+    /**
+     * The device pixel ratio scaled down by the adaptive scale, but not below 1 (unless the device one is), and
+     * capped to the max pixels. Once reduced it is rounded down to quarters, so that it changes in visible steps.
+     */
+    public double ratio() {
+        double ratio = Math.max(Math.min(1, deviceRatio), deviceRatio * scale);
+        if (maxPixels > 0) ratio = Math.min(ratio, Math.sqrt(maxPixels / Math.max(1, width * height)));
+        return ratio < deviceRatio ? Math.max(0.25, Math.floor(ratio * 4) / 4) : deviceRatio;
+    }
+
+    /** Emits itself each time the size or the ratio change, adapting the ratio to the frame time if adaptive. */
+    public Observable<Resolution> changes(boolean adaptive) {
+        Observable<?> resize$ = merge(resize(), pixelRatio()).debounce(RESIZE_DEBOUNCE_MS, MILLISECONDS)
+                .doOnNext(n -> measure());
+        Observable<?> adapt$ = adaptive
+                ? Observable.interval(ADAPT_WINDOW_MS, MILLISECONDS).doOnNext(n -> adapt())
+                : empty();
+        return Observable.defer(() -> {
+            double[] last = { width, height, ratio() };
+            return merge(resize$, adapt$).filter(n -> {
+                double[] now = { width, height, ratio() };
+                if (now[0] == last[0] && now[1] == last[1] && now[2] == last[2]) return false;
+                System.arraycopy(now, 0, last, 0, 3);
+                return true;
+            }).map(n -> this);
+        });
+    }
+
+    private void measure() {
+        width = container.getClientWidth();
+        height = container.getClientHeight();
+        deviceRatio = devicePixelRatio();
+    }
+
+    /**
+     * Lowers the ratio a step if the recent frames are slow, or raises it if they are fast enough to afford it and
+     * the hold is over.
+     */
+    private void adapt() {
+        Metrics.Histogram frames = Metrics.RECENT_FRAMES;
+        if (hold > 0) hold--;
+        if (frames.count() >= ADAPT_MIN_FRAMES) {
+            double p90 = frames.percentile(.9);
+            if (p90 > FRAME_BUDGET_MS && ratio() > Math.min(1, deviceRatio)) {
+                if (raised) backoff = Math.min(MAX_HOLD_WINDOWS, backoff * 2); // bounced back, try later next time
+                scale *= STEP;
+                raised = false;
+                hold = backoff;
+            } else if (hold == 0) {
+                if (raised) backoff = HOLD_WINDOWS; // the raised ratio held up
+                raised = false;
+                // the fill cost is quadratic, after a step up the frames are still within the budget
+                if (p90 < FRAME_BUDGET_MS / 3 && scale < 1) {
+                    scale = Math.min(1, scale / STEP);
+                    raised = true;
+                    hold = HOLD_WINDOWS;
+                }
+            }
+        }
+        frames.reset();
+    }
+
+    private static Observable<ResizeEvent> resize() {
+        return Observable.create(s -> {
+            HandlerRegistration registration = Window.addResizeHandler(s::onNext);
+            s.setCancellable(registration::removeHandler);
+        });
+    }
+
+    /** Emits the device pixel ratio each time it changes, a media query only matches the current one. */
+    private static Observable<Double> pixelRatio() {
+        return Observable.<Double>create(s -> {
+            MediaQueryList query = matchMedia("(resolution: " + devicePixelRatio() + "dppx)");
+            Listener listener = e -> {
+                s.onNext(devicePixelRatio());
+                s.onComplete();
+            };
+            query.addListener(listener);
+            s.setCancellable(() -> query.removeListener(listener));
+        }).repeat();
+    }
+
+    public static native double devicePixelRatio() /*-{
+        return $wnd.devicePixelRatio || 1;
+    }-*/;
+
+    @JsMethod(namespace = JsPackage.GLOBAL) private static native MediaQueryList matchMedia(String query);
+
+    @FunctionalInterface @JsFunction interface Listener {
+        void apply(Object event);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class MediaQueryList {
+        public native void addListener(Listener listener);
+        public native void removeListener(Listener listener);
+    }
+}
@@ -0,0 +1,72 @@
+package rxcanvas.client;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.SerialDisposable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+public class RxBatch<T> {
+
+    /**
+     * Coalesce items into batches. A batch is emitted when the time window, opened by its first item, expires or
+     * when adding one more item would exceed the budget. An item costing more than the budget goes alone.
+     *
+     * @param cost estimated size of each item, in the same unit as the budget (e.g. message chars)
+     * @param scheduler times the window, it must run on the thread emitting the items (e.g. animation frames in the
+     *                  browser, or a virtual time scheduler) as the batch isn't synchronized
+     */
+    public static <T> ObservableTransformer<T, List<T>> batch(
+            long window, TimeUnit unit, int budget, ToIntFunction<? super T> cost, Scheduler scheduler) {
+        return o -> Observable.create(s -> {
+            RxBatch<T> batch = new RxBatch<>(s, window, unit, budget, scheduler);
+            Disposable upstream = o.subscribe(n -> batch.add(n, cost.applyAsInt(n)), s::onError, batch::complete);
+            s.setCancellable(() -> {
+                upstream.dispose();
+                batch.timer.dispose();
+            });
+        });
+    }
+
+    private final ObservableEmitter<List<T>> s;
+    private final SerialDisposable timer = new SerialDisposable();
+    private final long window;
+    private final TimeUnit unit;
+    private final int budget;
+    private final Scheduler scheduler;
+    private List<T> pending = new ArrayList<>();
+    private int pendingCost = 0;
+
+    private RxBatch(ObservableEmitter<List<T>> s, long window, TimeUnit unit, int budget, Scheduler scheduler) {
+        this.s = s;
+        this.window = window;
+        this.unit = unit;
+        this.budget = budget;
+        this.scheduler = scheduler;
+    }
+
+    private void add(T n, int cost) {
+        if (!pending.isEmpty() && pendingCost + cost > budget) flush();
+        pending.add(n); pendingCost += cost;
+        if (pendingCost >= budget) flush();
+        else if (pending.size() == 1) timer.set(Observable.timer(window, unit, scheduler).subscribe(t -> flush()));
+    }
+
+    private void complete() {
+        flush();
+        s.onComplete();
+    }
+
+    private void flush() {
+        timer.set(null);
+        if (pending.isEmpty()) return;
+        List<T> out = pending;
+        pending = new ArrayList<>(); pendingCost = 0;
+        s.onNext(out);
+    }
+}
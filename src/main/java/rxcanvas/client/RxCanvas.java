@@ -1,37 +1,42 @@
 package rxcanvas.client;
 
 import static com.intendia.rxgwt2.client.RxGwt.retryDelay;
-import static com.intendia.rxgwt2.user.RxEvents.mouseDown;
-import static com.intendia.rxgwt2.user.RxEvents.mouseMove;
-import static com.intendia.rxgwt2.user.RxEvents.mouseUp;
-import static com.intendia.rxgwt2.user.RxEvents.touchEnd;
-import static com.intendia.rxgwt2.user.RxEvents.touchMove;
-import static com.intendia.rxgwt2.user.RxEvents.touchStart;
 import static com.intendia.rxgwt2.user.RxHandlers.click;
 import static com.intendia.rxgwt2.user.RxUser.keyPress;
-import static io.reactivex.BackpressureStrategy.BUFFER;
 import static io.reactivex.BackpressureStrategy.LATEST;
 import static io.reactivex.Completable.complete;
 import static io.reactivex.Observable.empty;
+import static io.reactivex.Observable.fromArray;
+import static io.reactivex.Observable.just;
 import static io.reactivex.Observable.merge;
 import static io.reactivex.Observable.timer;
 import static java.lang.Boolean.TRUE;
 import static java.lang.Math.random;
 import static java.util.Arrays.asList;
-import static rxcanvas.client.RxChromeCast.castMessage;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static rxcanvas.client.RxBatch.batch;
+import static rxcanvas.client.RxPointer.coalesced;
+import static rxcanvas.client.RxPointer.drags;
+import static rxcanvas.client.RxPointer.pointerUp;
+import static rxcanvas.client.RxPointer.predicted;
+import static rxcanvas.client.RxSchedulers.animationFrame;
+import static rxcanvas.client.RxSchedulers.handoff;
+import static rxcanvas.client.RxSchedulers.microtask;
+import static rxcanvas.client.Segment.segments;
 
 import cast.receiver.CastReceiver;
 import chrome.cast.ChromeCast;
-import chrome.cast.Session;
 import com.google.gwt.canvas.client.Canvas;
-import com.google.gwt.canvas.dom.client.Context;
 import com.google.gwt.canvas.dom.client.Context2d;
 import com.google.gwt.core.client.EntryPoint;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Element;
-import com.google.gwt.dom.client.Touch;
-import com.google.gwt.event.dom.client.MouseEvent;
-import com.google.gwt.user.client.DOM;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Button;
 import com.google.gwt.user.client.ui.HorizontalPanel;
 import com.google.gwt.user.client.ui.Panel;
@@ -40,17 +45,22 @@ import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.ObservableTransformer;
+import io.reactivex.Single;
 import io.reactivex.functions.Consumer;
+import io.reactivex.observables.ConnectableObservable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.function.BiFunction;
+import java.util.function.ToDoubleFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jsinterop.annotations.JsMethod;
 import jsinterop.annotations.JsPackage;
-import jsinterop.annotations.JsType;
 import rxcanvas.client.RxChromeCast.Receiver;
 import rxcanvas.client.RxChromeCast.Sender;
+import rxcanvas.client.RxPointer.PointerEvent;
 
 public class RxCanvas implements EntryPoint {
     private static final Logger log = Logger.getLogger(RxCanvas.class.getName());
@@ -58,86 +68,260 @@ public class RxCanvas implements EntryPoint {
             "#f9e4ad", "#faf2db", "#563512", "#9b4a0b", "#d36600", "#fe8a00", "#f9a71f");
     // use 'mvn gwt:devmode -DapplicationId=XXYYZZ' to use a local development application id
     private static final String APPLICATION_ID = System.getProperty("applicationId");
-    private static final String STROKE_CHANNEL = "urn:x-cast:com.intendia.rxcanvas-gwt";
+    static final String STROKE_CHANNEL = "urn:x-cast:com.intendia.rxcanvas-gwt";
+    // strokes are coalesced per window into one message, cast messages are limited to 64KB
+    private static final long BATCH_WINDOW_MS = 40;
+    private static final int BATCH_MAX_CHARS = 60_000;
+    private static final long RELAY_WINDOW_MS = 50;
+    private static final int SEND_QUEUE_CAPACITY = 1024;
+    private static final int INPUT_QUEUE_CAPACITY = 1024;
+    // pending changes are written to the journal once per window, and on unload
+    private static final long JOURNAL_WINDOW_MS = 1000;
+    // use '?codec=json' to send plain JSON strokes, receivers decode both formats
+    private static final CompactStrokeCodec COMPACT_CODEC = new CompactStrokeCodec(COLORS, JsonStrokeCodec.INSTANCE);
 
     @Override public void onModuleLoad() {
         Element body = RootPanel.getBodyElement();
-        int width = body.getClientWidth();
-        int height = body.getClientHeight();
+        // use '?maxpixels=N' to cap the canvas backing store, receivers cap it to 1080p as TVs report a pixel ratio
+        // of 2 or more and filling 4K is too much for a cast device
+        Resolution resolution = new Resolution(body,
+                Double.parseDouble(param("maxpixels", CastReceiver.isAvailable() ? "2073600" : "0")));
+        int width = resolution.width(), height = resolution.height();
+        double ratio = resolution.ratio();
 
         Canvas canvas = Canvas.createIfSupported();
         canvas.setWidth(width + "px");
         canvas.setHeight(height + "px");
-        Context2d canvas2d = canvas.getContext2d();
         RootPanel.get().add(canvas);
 
-        int ratio = ratio(canvas2d);
-        canvas.setCoordinateSpaceWidth(width * ratio);
-        canvas.setCoordinateSpaceHeight(height * ratio);
-        canvas2d.scale(ratio, ratio);
-
-        Observable<List<double[]>> mouseDiff$ = mouseMove(canvas)
-                .map(e -> canvasPosition(canvas, e))
-                .buffer(3, 1);
-
-        Observable<List<double[]>> mouseDrag$ = mouseDown(canvas).compose(log("mouse down"))
-                .flatMap(e -> mouseDiff$
-                        .doOnSubscribe(s -> DOM.setCapture(canvas.getElement()))
-                        .doOnDispose(() -> DOM.releaseCapture(canvas.getElement()))
-                        .takeUntil(mouseUp(canvas).compose(log("mouse up"))));
-
-        Observable<List<double[]>> touchDiff$ = touchMove(canvas)
-                .map(e -> e.getTouches().get(0))
-                .map(e -> canvasPosition(canvas, e))
-                .buffer(3, 1);
+        // use '?renderer=worker' to rasterize in a web worker (offscreen canvas) if supported, '?renderer=webgl' to
+        // draw with WebGL if supported, or '?renderer=tiles' to composite only the changed tiles each frame, the
+        // default for receivers as they usually have large screens
+        String mode = param("renderer", CastReceiver.isAvailable() ? "tiles" : "main");
+        boolean offscreen = "worker".equals(mode) && WorkerRenderer.isSupported();
+        GlRenderer.Gl gl = "webgl".equals(mode) ? GlRenderer.context(canvas.getCanvasElement()) : null;
+        Context2d canvas2d = offscreen || gl != null ? null : canvas.getContext2d();
+        canvas.setCoordinateSpaceWidth((int) Math.round(width * ratio));
+        canvas.setCoordinateSpaceHeight((int) Math.round(height * ratio));
+        Renderer renderer;
+        if (offscreen) {
+            GWT.log("Rendering in a web worker…");
+            renderer = new WorkerRenderer(canvas.getCanvasElement(), ratio);
+        } else if (gl != null) {
+            GWT.log("Rendering with WebGL…");
+            renderer = new GlRenderer(gl, ratio);
+        } else {
+            canvas2d.scale(ratio, ratio);
+            renderer = "tiles".equals(mode) ? new TiledRenderer(canvas2d, ratio) : new CanvasRenderer(canvas2d, ratio);
+        }
 
-        Observable<List<double[]>> touchDrag$ = touchStart(canvas).compose(log("touch start"))
-                .flatMap(e -> touchDiff$
-                        .doOnSubscribe(s -> DOM.setCapture(canvas.getElement()))
-                        .doOnDispose(() -> DOM.releaseCapture(canvas.getElement()))
-                        .takeUntil(touchEnd(canvas).compose(log("touch end"))));
+        // pointer events unify mouse, touch and pen, each pressed pointer is a separate drag; the event handlers only
+        // queue the events, which are processed (segments, ink) in the microtask following the event; the drags are
+        // shared so the listeners and the processing aren't repeated for each consumer (ink, predictions, recorder)
+        Element el = canvas.getElement();
+        Observable<Observable<PointerEvent>> pointerDrag$ = drags(el)
+                .map(drag -> drag.compose(handoff(microtask(), INPUT_QUEUE_CAPACITY)).share())
+                .compose(log("pointer down")).share();
+
+        // full fidelity segments from the coalesced samples, one window per pointer so strokes don't mix, the points
+        // are simplified within a tolerance (px) and smoothed, use '?tolerance=0&smooth=false' to get the raw input
+        double tolerance = Double.parseDouble(param("tolerance", "0.75"));
+        boolean smooth = Boolean.parseBoolean(param("smooth", "true"));
+        // the ink width follows the pressure of pens and the speed of other pointers, use '?brush=speed' to follow the
+        // speed of pens too, or '?brush=fixed' to keep the width of each stroke
+        String brush = param("brush", "auto");
+        // use '?replay=<trace url>&speed=10' to draw a recorded input 10 times faster ('speed=0' as fast as possible)
+        ConnectableObservable<Trace.Event> replay$ = replay(param("replay", null),
+                Double.parseDouble(param("speed", "1")));
+        // the segments of each drag
+        Observable<Observable<Segment>> drag$ = (replay$ != null
+                ? replay$.compose(Trace.drags()).map(drag -> {
+                    // the recorded pen pressure, or the speed in trace time
+                    Brush ink = new Brush();
+                    ToDoubleFunction<Trace.Event> width = "fixed".equals(brush) ? null : e -> ink.width(
+                            e.x, e.y, e.time, "auto".equals(brush) ? e.pressure : Double.NaN);
+                    return drag.compose(segments(e -> e.x, e -> e.y, width, tolerance, smooth));
+                })
+                : pointerDrag$.map(pointer -> {
+                    double left = el.getAbsoluteLeft(), top = el.getAbsoluteTop();
+                    Brush ink = new Brush();
+                    ToDoubleFunction<PointerEvent> width = "fixed".equals(brush) ? null : e -> ink.width(
+                            e.pageX - left, e.pageY - top, e.timeStamp,
+                            "auto".equals(brush) && "pen".equals(e.pointerType) ? e.pressure : Double.NaN);
+                    return pointer.concatMap(e -> {
+                        PointerEvent[] samples = coalesced(e);
+                        Metrics.input(samples[0].timeStamp);
+                        return fromArray(samples);
+                    }).compose(segments(e -> e.pageX - left, e -> e.pageY - top, width, tolerance, smooth));
+                })).map(Observable::share).share();
+
+        // the last predicted sample extends the ink for one frame, hiding part of the input latency
+        Observable<double[][]> predicted$ = replay$ != null ? empty() : pointerDrag$.flatMap(pointer -> {
+            double left = el.getAbsoluteLeft(), top = el.getAbsoluteTop();
+            return pointer.concatMap(e -> {
+                PointerEvent[] predicted = predicted(e);
+                if (predicted.length == 0) return Observable.<double[][]>empty();
+                PointerEvent p = predicted[predicted.length - 1];
+                double[] from = { e.pageX - left, e.pageY - top };
+                return just(new double[][] { from, from, { p.pageX - left, p.pageY - top } });
+            });
+        });
 
-        Flowable<?> up$ = Observable.<Object>merge(mouseUp(canvas), touchEnd(canvas))
-                .toFlowable(LATEST).startWith(TRUE);
-        Observable<List<double[]>> drag$ = merge(mouseDrag$, touchDrag$);
+        Flowable<?> up$ = pointerUp(el).compose(log("pointer up")).toFlowable(LATEST).map(e -> TRUE).startWith(TRUE);
 
-        Observable<String> paint$ = keyPress(canvas, '1').map(e -> "paint").startWith("default");
-        Observable<String> erase$ = keyPress(canvas, '2').map(e -> "erase");
+        Observable<String> mode$ = replay$ != null
+                ? replay$.filter(e -> e.type == Trace.MODE).map(e -> e.text)
+                : merge(keyPress(canvas, '1').map(e -> "paint"), keyPress(canvas, '2').map(e -> "erase")).share();
+        Observable<String> paint$ = mode$.filter("paint"::equals).startWith("default");
+        Observable<String> erase$ = mode$.filter("erase"::equals);
 
         // return a different color and size on each mouse down
         Flowable<String> colors$ = Flowable.fromIterable(COLORS).repeat();
         Flowable<String> color$ = up$.zipWith(colors$, (l, r) -> r).doOnNext(n -> setStyle(body, "--color", n));
         Flowable<Double> sizes$ = Flowable.defer(() -> Flowable.just(random() * 30 + 10)).repeat();
         Flowable<Double> size$ = up$.zipWith(sizes$, (l, r) -> r).doOnNext(n -> setStyle(body, "--size", n));
-        Observable<Options> options$ = Flowable.combineLatest(color$, size$, Options::new).toObservable().share();
-        Observable<Stroke> stroke$ = drag$.withLatestFrom(options$, (diff, options) -> {
-            Stroke stroke = new Stroke();
-            stroke.color = options.color;
-            stroke.stroke = options.stroke;
-            stroke.line = diff.toArray(new double[0][]);
-            return stroke;
-        });
-
-        // drag painting using sequential color
-        Observable<Observable<Consumer<Context2d>>> painting$ = paint$
-                .map(e -> stroke$.map(this::paintStroke));
-
-        // drag erasing
-        Observable<Observable<Consumer<Context2d>>> erasing$ = erase$
-                .map(e -> drag$.map(diff -> ctx -> erase(diff, ctx)));
+        // the current options are replayed to each new consumer, so the recorder writes them before the first drag
+        Observable<Options> options$ = (replay$ != null
+                ? replay$.filter(e -> e.type == Trace.OPTIONS).map(e -> new Options(e.text, e.x)).doOnNext(o -> {
+                    setStyle(body, "--color", o.color);
+                    setStyle(body, "--size", o.stroke);
+                })
+                : Flowable.combineLatest(color$, size$, Options::new).toObservable()).replay(1).autoConnect();
+        // the strokes of each drag, and of all of them
+        Observable<Observable<Stroke>> drawn$ = drag$.map(drag -> drag.withLatestFrom(options$,
+                (diff, options) -> options.stroke(diff.toLine(), diff.toWidths())).share()).share();
+        Observable<Stroke> stroke$ = drawn$.flatMap(drag -> drag).share();
+        Observable<Stroke> prediction$ = predicted$.withLatestFrom(options$, (line, options) -> options.stroke(line));
+
+        // drag painting using sequential color, each drag closes an undo group once all its segments are painted
+        Observable<Observable<Consumer<History>>> painting$ = paint$
+                .map(e -> merge(drawn$.flatMap(drag -> drag.<Consumer<History>>map(stroke -> h -> h.stroke(stroke))
+                                .concatWith(just(History::commit))),
+                        prediction$.map(stroke -> h -> h.predict(stroke))));
+
+        // drag erasing, removes the segments under the pointer
+        Observable<Observable<Consumer<History>>> erasing$ = erase$
+                .map(e -> drag$.flatMap(drag -> drag.<Consumer<History>>map(diff -> {
+                    double x = diff.x(0), y = diff.y(0);
+                    return h -> h.erase(x, y);
+                }).concatWith(just(History::commit))));
+
+        // draw actions are queued and flushed once per animation frame, use '?undomemory=N' to give the raster
+        // checkpoints used to repaint undone areas N MB (0 repaints them from the scene)
+        Drawing drawing = new Drawing(renderer, width, height,
+                Double.parseDouble(param("undomemory", "64")) * 1024 * 1024);
+        // local actions go through the history to be undone, the undo ops are shared like strokes
+        PublishSubject<Stroke> undo$ = PublishSubject.create();
+        History history = new History(drawing, undo$::onNext);
+        Consumer<Consumer<History>> painter = action -> action.accept(history);
+
+        // follow the window size and pixel ratio, lowering the ratio while frames are slow (the worker frame time isn't
+        // known in the main thread), use '?adaptive=false' to keep the device ratio
+        boolean adaptive = !offscreen && Boolean.parseBoolean(param("adaptive", "true"));
+        bind("canvas resolution", resolution.changes(adaptive).doOnNext(r -> {
+            GWT.log("Canvas " + r.width() + "x" + r.height() + " at " + r.ratio() + " px ratio");
+            canvas.setWidth(r.width() + "px");
+            canvas.setHeight(r.height() + "px");
+            drawing.resize(r.width(), r.height(), r.ratio());
+        }));
+
+        // use '?persist=false' to start with a blank drawing, receivers restore it after restarting on inactivity; the
+        // pending changes are also written when the page is hidden or closed, the last second of edits is best-effort
+        // as the browser may unload the page before the write commits
+        if (replay$ == null && Boolean.parseBoolean(param("persist", "true")) && Journal.isSupported()) {
+            Journal journal = new Journal(drawing, COMPACT_CODEC);
+            bind("drawing journal", journal.restore().andThen(merge(journal.autosave(JOURNAL_WINDOW_MS, MILLISECONDS),
+                    Journal.hidden().concatMapCompletable(e -> journal.save()).toObservable())));
+            Window.addWindowClosingHandler(e -> journal.save().subscribe());
+        }
 
-        Consumer<Consumer<Context2d>> painter = action -> action.accept(canvas2d);
+        // use '?load=<stroke file url>' or drop stroke files on the page to add their strokes, decoded and painted a
+        // chunk per animation frame so large drawings load without freezing the page
+        String load = param("load", null);
+        bind("drawing import", merge(load != null ? just(RxFiles.fetch(load)) : Observable.<Observable<byte[]>>empty(),
+                RxFiles.drops(body).map(RxFiles::read))
+                .concatMap(file -> file.compose(DrawingFile.chunks())
+                        .concatMap(chunk -> just(chunk).delay(0, MILLISECONDS, animationFrame()))
+                        .map(DrawingFile::decode)
+                        .doOnComplete(() -> GWT.log("Import done"))
+                        .onErrorResumeNext(err -> {
+                            GWT.log("Import error: " + err);
+                            return empty();
+                        }))
+                .doOnNext(drawing::strokes));
+
+        // press 's' to export the drawing as SVG, or 'f' as a stroke file to load it later
+        bind("drawing export", merge(
+                keyPress(canvas, 's').doOnNext(e -> RxFiles.save("drawing.svg", "image/svg+xml",
+                        DrawingFile.svg(drawing.scene().strokes(), resolution.width(), resolution.height()))),
+                keyPress(canvas, 'f').doOnNext(e -> RxFiles.save("drawing.rxcv", "application/octet-stream",
+                        DrawingFile.write(drawing.scene().strokes())))));
 
         // bind interactive painter
-        bind("interactive painter", Observable.switchOnNext(merge(painting$, erasing$)).doOnNext(painter));
+        bind("interactive painter", Observable.switchOnNext(merge(painting$, erasing$))
+                .doOnNext(painter).doOnNext(action -> Metrics.ink()));
+
+        // press 'z' to undo the last drag, and 'y' to redo it
+        bind("undo history", merge(
+                keyPress(canvas, 'z').doOnNext(e -> history.undo()),
+                keyPress(canvas, 'y').doOnNext(e -> history.redo())));
+
+        // use '?record=true' to record the input, rxcanvasTrace() returns it to save it and replay it later
+        if (Boolean.parseBoolean(param("record", "false"))) {
+            Trace trace = new Trace(Schedulers.computation());
+            exportTrace(trace);
+            bind("input recorder", merge(
+                    pointerDrag$.flatMap(pointer -> {
+                        double left = el.getAbsoluteLeft(), top = el.getAbsoluteTop();
+                        int drag = trace.down();
+                        return pointer.concatMap(e -> fromArray(coalesced(e)))
+                                .doOnNext(e -> trace.move(drag, e.pageX - left, e.pageY - top,
+                                        "pen".equals(e.pointerType) ? e.pressure : Double.NaN))
+                                .doFinally(() -> trace.up(drag));
+                    }),
+                    mode$.doOnNext(trace::mode),
+                    options$.doOnNext(o -> trace.options(o.color, o.stroke))));
+        }
+
+        // use '?metrics=true' to show the latency histograms, rxcanvasMetrics() dumps them from the console
+        Metrics.export();
+        if (Boolean.parseBoolean(param("metrics", "false"))) bind("metrics overlay", Metrics.overlay());
+
+        // strokes are shared through a transport (a cast session or a relay server connection), sending the new ones
+        // and painting the ones relayed from other pages
+        StrokeCodec codec = "json".equals(param("codec", "compact")) ? JsonStrokeCodec.INSTANCE : COMPACT_CODEC;
+        // use '?send=buffer|drop|merge&inflight=N' to tune the behaviour when the transport is slow
+        SendQueue.Overflow overflow = SendQueue.Overflow.valueOf(
+                param("send", SendQueue.Overflow.MERGE.name()).toUpperCase());
+        int inFlight = Integer.parseInt(param("inflight", "2"));
+        // the strokes are batched and encoded in animation frames, after the input and its ink are processed; the
+        // handoff keeps them all, the send queue overflow policy decides what to drop
+        Observable<List<Stroke>> batch$ = merge(stroke$, undo$).compose(handoff(animationFrame(), Integer.MAX_VALUE))
+                .compose(batch(BATCH_WINDOW_MS, MILLISECONDS, BATCH_MAX_CHARS, codec::cost, animationFrame()));
+        BiFunction<Transport, CastSync, Completable> share = (transport, sync) -> new SendQueue(
+                codec, BATCH_MAX_CHARS, inFlight, SEND_QUEUE_CAPACITY, overflow)
+                .send(batch$, message -> transport.send(STROKE_CHANNEL, message)
+                        .compose(Metrics.timed(Metrics.CAST_RTT)))
+                .mergeWith(sync.join(transport))
+                .mergeWith(CastRelay.listen(transport, drawing, COMPACT_CODEC, sync));
 
         // bind chrome cast receiver
         if (CastReceiver.isAvailable()) {
             GWT.log("Initializing chrome cast receiver…");
             Receiver receiver = new Receiver();
-            Observable<Stroke> receiverChannel$ = receiver.castMessage(STROKE_CHANNEL)
-                    .map(event -> RxCanvas.parse(event.data));
-            bind("chrome cast receiver", receiverChannel$.map(this::paintStroke).doOnNext(painter));
+            // use 'receiver.html?relay=true' to share the strokes of each sender with all the others
+            CastRelay relay = Boolean.parseBoolean(param("relay", "false"))
+                    ? new CastRelay(COMPACT_CODEC, BATCH_MAX_CHARS) : null;
+            Observable<?> receiverChannel$ = receiver.castMessage(STROKE_CHANNEL).doOnNext(event -> {
+                List<Stroke> strokes = COMPACT_CODEC.decode((String) event.data);
+                drawing.strokes(strokes);
+                drawing.checkpoint();
+                if (relay != null) relay.offer(event.senderId, strokes);
+            });
+            bind("chrome cast receiver", receiverChannel$);
+            if (relay != null) bind("chrome cast receiver relay", Observable.interval(RELAY_WINDOW_MS, MILLISECONDS)
+                    .doOnNext(n -> relay.flush(receiver)));
+            bind("chrome cast receiver sync", new CastSync(drawing, COMPACT_CODEC, BATCH_MAX_CHARS).serve(receiver));
             receiver.start();
         }
 
@@ -161,12 +345,50 @@ public class RxCanvas implements EntryPoint {
                                 .doOnTerminate(panel::removeFromParent)
                                 .doOnDispose(panel::removeFromParent);
                     }).subscribe();
-            Function<Session, Completable> castMessage = session -> stroke$.toFlowable(BUFFER)
-                    .flatMapSingle(stroke -> castMessage(session, STROKE_CHANNEL, stringify(stroke)), false, 1)
-                    .ignoreElements();
-            bind("chrome cast sender", sender.session()
-                    .switchMap(s -> s.map(castMessage).orElse(complete()).toObservable()));
+            // on each new session catch up with the receiver drawing, and send new strokes
+            CastSync sync = new CastSync(drawing, COMPACT_CODEC, BATCH_MAX_CHARS);
+            bind("chrome cast sender", sender.session().switchMap(s -> s
+                    .map(session -> share.apply(RxChromeCast.transport(session), sync))
+                    .orElse(complete()).toObservable()));
         }
+
+        // use '?ws=ws://localhost:8765' to share the canvas through a relay server (see the relay module), with or
+        // without cast, reconnecting and catching up when the connection drops
+        String ws = param("ws", null);
+        if (ws != null && RxWebSocket.isSupported()) {
+            GWT.log("Connecting to relay " + ws + "…");
+            CastSync sync = new CastSync(drawing, COMPACT_CODEC, BATCH_MAX_CHARS);
+            bind("websocket relay", RxWebSocket.connect(ws)
+                    .switchMap(transport -> share.apply(transport, sync).toObservable()));
+        }
+
+        // everything bound, start replaying
+        if (replay$ != null) replay$.connect();
+    }
+
+    static String param(String name, String defaultValue) {
+        String value = Window.Location.getParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /** The events of the trace at the url replayed, null if no url. */
+    static ConnectableObservable<Trace.Event> replay(String url, double speed) {
+        if (url == null) return null;
+        return Single.<String>create(s -> {
+            Request request = new RequestBuilder(RequestBuilder.GET, url).sendRequest(null, new RequestCallback() {
+                @Override public void onResponseReceived(Request req, Response res) {
+                    if (res.getStatusCode() == Response.SC_OK) s.onSuccess(res.getText());
+                    else s.onError(new RequestException("trace " + url + " status " + res.getStatusCode()));
+                }
+                @Override public void onError(Request req, Throwable err) { s.onError(err); }
+            });
+            s.setCancellable(request::cancel);
+        }).flatMapObservable(trace -> Trace.replay(Trace.parse(trace), speed, Schedulers.computation()))
+                .doOnSubscribe(s -> GWT.log("Replaying " + url + "…"))
+                .doOnComplete(() -> GWT.log("Replay done"))
+                .doOnError(err -> GWT.log("Replay error: " + err))
+                .onErrorResumeNext(Observable.empty())
+                .publish();
     }
 
     static void bind(String summary, Observable<?> o) {
@@ -182,64 +404,28 @@ public class RxCanvas implements EntryPoint {
             this.color = color;
             this.stroke = stroke;
         }
-    }
-
-    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
-    public static class Stroke {
-        public String color;
-        public Double stroke;
-        public double[][] line;
-
-    }
-
-    private void erase(List<double[]> diff, Context2d ctx) {
-        ctx.clearRect(diff.get(0)[0] - 5, diff.get(0)[1] - 5, 10, 10);
-    }
-
-    private Consumer<Context2d> paintStroke(Stroke stroke) {
-        return ctx -> paint(stroke.color, stroke.stroke, stroke.line, ctx);
-    }
-
-    private void paint(String color, Double stroke, double[][] diff, Context2d ctx) throws Exception {
-        tx(ctx, ignore -> {
-            ctx.beginPath();
-            ctx.bezierCurveTo(
-                    diff[0][0], diff[0][1],
-                    diff[1][0], diff[1][1],
-                    diff[2][0], diff[2][1]);
-            ctx.setLineCap(Context2d.LineCap.ROUND);
-            ctx.setLineWidth(stroke);
-            ctx.setStrokeStyle(color);
-            ctx.stroke();
-        });
-    }
-
-    private double[] canvasPosition(Canvas canvas, MouseEvent<?> e) {
-        return new double[] { e.getRelativeX(canvas.getElement()), e.getRelativeY(canvas.getElement()) };
-    }
-
-    private double[] canvasPosition(Canvas canvas, Touch t) {
-        return new double[] { t.getRelativeX(canvas.getElement()), t.getRelativeY(canvas.getElement()) };
-    }
-
-    public void tx(Context2d ctx, Consumer<Context2d> draw) throws Exception {
-        ctx.save();
-        draw.accept(ctx);
-        ctx.restore();
+        Stroke stroke(double[][] line) {
+            Stroke out = new Stroke();
+            out.color = color;
+            out.stroke = stroke;
+            out.line = line;
+            return out;
+        }
+        /** The stroke with a width profile, the widths as factors of the stroke width, if not null. */
+        Stroke stroke(double[][] line, double[] widths) {
+            Stroke out = stroke(line);
+            if (widths != null) out.widths = new double[] { stroke * widths[0], stroke * widths[1] };
+            return out;
+        }
     }
 
     @JsMethod(namespace = "JSON") public static native String stringify(Object json);
     @JsMethod(namespace = "JSON") public static native <T> T parse(Object json);
+    @JsMethod(namespace = "Array") public static native boolean isArray(Object o);
     @JsMethod(namespace = JsPackage.GLOBAL) public static native void close();
 
-    public static native int ratio(Context context) /*-{
-        var devicePixelRatio = $wnd.devicePixelRatio || 1,
-            backingStoreRatio = context.backingStorePixelRatio ||
-                context.webkitBackingStorePixelRatio ||
-                context.mozBackingStorePixelRatio ||
-                context.msBackingStorePixelRatio ||
-                context.oBackingStorePixelRatio || 1;
-        return devicePixelRatio / backingStoreRatio;
+    private static native void exportTrace(Trace trace) /*-{
+        $wnd.rxcanvasTrace = $entry(function () { return trace.@rxcanvas.client.Trace::export()(); });
     }-*/;
 
     public static native void setStyle(Element e, String name, Object value) /*-{
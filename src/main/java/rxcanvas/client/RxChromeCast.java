@@ -7,12 +7,16 @@ import cast.receiver.CastReceiverManager;
 import chrome.cast.ApiConfig;
 import chrome.cast.ChromeCast;
 import chrome.cast.ChromeCast.A1;
+import chrome.cast.ChromeCast.A2;
 import chrome.cast.Session;
 import chrome.cast.SessionRequest;
 import com.google.gwt.core.client.GWT;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.subjects.BehaviorSubject;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 public class RxChromeCast {
@@ -64,8 +68,31 @@ public class RxChromeCast {
                 e -> s.onError(new RuntimeException("failure: " + stringify(e)))));
     }
 
+    /** Messages sent by the receiver to this sender. */
+    public static Observable<String> sessionMessage(Session session, String namespace) {
+        return Observable.create(s -> {
+            A2<String, String> listener = (ns, message) -> s.onNext(message);
+            session.addMessageListener(namespace, listener);
+            s.setCancellable(() -> session.removeMessageListener(namespace, listener));
+        });
+    }
+
+    /** The session as a transport, messages are acknowledged by the cast framework. */
+    public static Transport transport(Session session) {
+        return new Transport() {
+            @Override public Completable send(String namespace, String message) {
+                return castMessage(session, namespace, message).ignoreElement();
+            }
+
+            @Override public Observable<String> messages(String namespace) {
+                return sessionMessage(session, namespace);
+            }
+        };
+    }
+
     public static class Receiver {
         private final CastReceiverManager manager;
+        private final Map<String, CastMessageBus> messageBuses = new HashMap<>();
 
         public Receiver() {
             GWT.log("Starting receiver manager…");
@@ -95,11 +122,25 @@ public class RxChromeCast {
 
         public Observable<CastMessageBus.Event> castMessage(String namespace) {
             return Observable.create(s -> {
-                CastMessageBus messageBus = manager.getCastMessageBus(namespace);
+                CastMessageBus messageBus = messageBus(namespace);
                 A1<CastMessageBus.Event> listener = s::onNext;
                 messageBus.addEventListener("message", listener);
                 s.setCancellable(() -> messageBus.removeEventListener("message", listener));
             });
         }
+
+        /** Sends to one sender, the namespace must have been subscribed before the receiver get started! */
+        public void send(String namespace, String senderId, String message) {
+            messageBus(namespace).send(senderId, message);
+        }
+
+        /** Sends to all the connected senders. */
+        public void broadcast(String namespace, String message) {
+            messageBus(namespace).broadcast(message);
+        }
+
+        private CastMessageBus messageBus(String namespace) {
+            return messageBuses.computeIfAbsent(namespace, manager::getCastMessageBus);
+        }
     }
 }
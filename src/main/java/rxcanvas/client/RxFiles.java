@@ -0,0 +1,164 @@
+package rxcanvas.client;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+import com.google.gwt.typedarrays.shared.Int8Array;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsMethod;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/** Files in and out of the page. Contents are streamed in the pieces the browser reads, not loaded at once. */
+public class RxFiles {
+
+    /** The body of the url, in the pieces received. */
+    public static Observable<byte[]> fetch(String url) {
+        return Observable.create(s -> fetch(url).then(res -> {
+            if (res.ok) body(res, s);
+            else s.onError(new IllegalStateException(url + " status " + res.status));
+        }, err -> s.onError(new IllegalStateException(url + " error " + err))));
+    }
+
+    /** The content of the file (or any blob), in the pieces read. */
+    public static Observable<byte[]> read(Object blob) {
+        return Observable.create(s -> body(new Response(blob), s));
+    }
+
+    /** Each file dropped on the element. */
+    public static Observable<Object> drops(Element el) {
+        return Observable.create(s -> {
+            DropTarget target = (DropTarget) (Object) el;
+            Listener<DragEvent> over = DragEvent::preventDefault; // to accept the drop
+            Listener<DragEvent> drop = e -> {
+                e.preventDefault();
+                for (Object file : e.dataTransfer.files) s.onNext(file);
+            };
+            target.addEventListener("dragover", over);
+            target.addEventListener("drop", drop);
+            s.setCancellable(() -> {
+                target.removeEventListener("dragover", over);
+                target.removeEventListener("drop", drop);
+            });
+        });
+    }
+
+    /** Downloads the text as a file. */
+    public static void save(String name, String type, String text) {
+        download(name, type, text);
+    }
+
+    /** Downloads the bytes as a file. */
+    public static void save(String name, String type, byte[] bytes) {
+        Int8Array array = TypedArrays.createInt8Array(bytes.length);
+        for (int i = 0; i < bytes.length; i++) array.set(i, bytes[i]);
+        download(name, type, array);
+    }
+
+    /** Streams the body if the browser supports it, or reads it at once. */
+    private static void body(Response res, ObservableEmitter<byte[]> s) {
+        if (res.body == null) {
+            res.arrayBuffer().then(buffer -> {
+                s.onNext(bytes(buffer, 0, -1));
+                s.onComplete();
+            }, err -> s.onError(new IllegalStateException("read error " + err)));
+            return;
+        }
+        StreamReader reader = res.body.getReader();
+        s.setCancellable(reader::cancel);
+        pump(reader, s);
+    }
+
+    private static void pump(StreamReader reader, ObservableEmitter<byte[]> s) {
+        reader.read().then(chunk -> {
+            if (s.isDisposed()) return;
+            if (chunk.done) s.onComplete();
+            else {
+                s.onNext(bytes(chunk.value.buffer, chunk.value.byteOffset, chunk.value.length));
+                pump(reader, s);
+            }
+        }, err -> s.onError(new IllegalStateException("read error " + err)));
+    }
+
+    private static byte[] bytes(Object buffer, int offset, int length) {
+        Int8Array array = length < 0
+                ? TypedArrays.createInt8Array((ArrayBuffer) buffer)
+                : TypedArrays.createInt8Array((ArrayBuffer) buffer, offset, length);
+        byte[] out = new byte[array.length()];
+        for (int i = 0; i < out.length; i++) out[i] = array.get(i);
+        return out;
+    }
+
+    @JsMethod(namespace = JsPackage.GLOBAL) private static native Promise<Response> fetch(String url);
+
+    private static native void download(String name, String type, Object data) /*-{
+        var url = $wnd.URL.createObjectURL(new $wnd.Blob([data], { type: type }));
+        var a = $doc.createElement('a');
+        a.href = url;
+        a.download = name;
+        $doc.body.appendChild(a);
+        a.click();
+        $doc.body.removeChild(a);
+        $wnd.setTimeout(function () { $wnd.URL.revokeObjectURL(url); }, 0);
+    }-*/;
+
+    @FunctionalInterface @JsFunction interface Listener<T> {
+        void apply(T value);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class Promise<T> {
+        public native Promise<Object> then(Listener<T> onFulfilled, Listener<Object> onRejected);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class Response {
+        public boolean ok;
+        public int status;
+        public Stream body; // null if streams aren't supported
+        public Response(Object body) {}
+        public native Promise<Object> arrayBuffer();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "ReadableStream")
+    static class Stream {
+        public native StreamReader getReader();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "ReadableStreamDefaultReader")
+    static class StreamReader {
+        public native Promise<Chunk> read();
+        public native Promise<Object> cancel();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    static class Chunk {
+        public boolean done;
+        public Uint8Array value;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class Uint8Array {
+        public Object buffer;
+        public int byteOffset, length;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Element")
+    interface DropTarget {
+        void addEventListener(String type, Listener<DragEvent> listener);
+        void removeEventListener(String type, Listener<DragEvent> listener);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class DragEvent {
+        public DataTransfer dataTransfer;
+        public native void preventDefault();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    static class DataTransfer {
+        public Object[] files; // a FileList, array like
+    }
+}
@@ -0,0 +1,75 @@
+package rxcanvas.client;
+
+import static io.reactivex.Observable.merge;
+
+import com.google.gwt.dom.client.Element;
+import io.reactivex.Observable;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/** Pointer Events unify mouse, touch and pen input, and expose the coalesced and predicted samples. */
+public class RxPointer {
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    public static class PointerEvent {
+        public int pointerId;
+        public String pointerType;
+        public double pressure;
+        public double pageX;
+        public double pageY;
+        public double timeStamp;
+        public native void preventDefault();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Element")
+    interface PointerTarget {
+        void addEventListener(String type, Listener listener);
+        void removeEventListener(String type, Listener listener);
+        void setPointerCapture(int pointerId);
+    }
+
+    @FunctionalInterface @JsFunction interface Listener {
+        void apply(PointerEvent e);
+    }
+
+    public static Observable<PointerEvent> pointer(Element el, String type) {
+        return Observable.create(s -> {
+            PointerTarget target = (PointerTarget) (Object) el;
+            Listener listener = s::onNext;
+            target.addEventListener(type, listener);
+            s.setCancellable(() -> target.removeEventListener(type, listener));
+        });
+    }
+
+    public static Observable<PointerEvent> pointerUp(Element el) {
+        return merge(pointer(el, "pointerup"), pointer(el, "pointercancel"));
+    }
+
+    /**
+     * One inner observable per pressed pointer (so each finger of a multi-touch draws its own stroke), emitting the
+     * pointer down and move events until the pointer is released. The pointer is captured while the drag is observed,
+     * subscribe to it in the pointer down event (e.g. {@code flatMap}) and share it if observed more than once.
+     */
+    public static Observable<Observable<PointerEvent>> drags(Element el) {
+        Observable<PointerEvent> move$ = pointer(el, "pointermove");
+        Observable<PointerEvent> up$ = pointerUp(el);
+        return pointer(el, "pointerdown").map(down -> {
+            int id = down.pointerId;
+            return move$.filter(e -> e.pointerId == id).startWith(down)
+                    .takeUntil(up$.filter(e -> e.pointerId == id))
+                    .doOnSubscribe(d -> ((PointerTarget) (Object) el).setPointerCapture(id));
+        });
+    }
+
+    /** High frequency samples merged by the browser into this event, or the event itself if not supported. */
+    public static native PointerEvent[] coalesced(PointerEvent e) /*-{
+        var events = e.getCoalescedEvents ? e.getCoalescedEvents() : [];
+        return events.length ? events : [e];
+    }-*/;
+
+    /** Samples the browser predicts will follow this event, empty if not supported. */
+    public static native PointerEvent[] predicted(PointerEvent e) /*-{
+        return e.getPredictedEvents ? e.getPredictedEvents() : [];
+    }-*/;
+}
@@ -0,0 +1,186 @@
+package rxcanvas.client;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.user.client.Timer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Schedulers for the browser event loop. The tasks due are run in batch in the next microtask, right after the
+ * current event handler returns, or in the next animation frame, before painting. Delayed tasks wait in a timer and
+ * then join the batch. Use {@link #handoff} to move the work downstream of an event source to one of them, so the
+ * event handler only queues the event.
+ */
+public class RxSchedulers {
+    private static final Scheduler MICROTASK = new LoopScheduler(RxSchedulers::microtask);
+    private static final Scheduler ANIMATION_FRAME = new LoopScheduler(
+            run -> AnimationScheduler.get().requestAnimationFrame(timestamp -> run.run()));
+
+    public static Scheduler microtask() { return MICROTASK; }
+
+    public static Scheduler animationFrame() { return ANIMATION_FRAME; }
+
+    /**
+     * Hands the items over to the scheduler, the source only queues them and they are emitted in batch in the next
+     * task of the scheduler. At most {@code capacity} items wait, beyond it the oldest are dropped, as a stalled
+     * consumer shouldn't make the page run out of memory. Completion and errors are emitted after the queued items.
+     */
+    public static <T> ObservableTransformer<T, T> handoff(Scheduler scheduler, int capacity) {
+        return o -> Observable.create(s -> {
+            Handoff<T> handoff = new Handoff<>(s, scheduler.createWorker(), capacity);
+            Disposable upstream = o.subscribe(handoff::offer, handoff::error, handoff::complete);
+            s.setCancellable(() -> {
+                upstream.dispose();
+                handoff.worker.dispose();
+            });
+        });
+    }
+
+    private static class Handoff<T> {
+        final ObservableEmitter<T> s;
+        final Scheduler.Worker worker;
+        final int capacity;
+        final ArrayDeque<T> queue = new ArrayDeque<>();
+        boolean scheduled;
+        boolean done;
+        Throwable error;
+
+        Handoff(ObservableEmitter<T> s, Scheduler.Worker worker, int capacity) {
+            this.s = s;
+            this.worker = worker;
+            this.capacity = capacity;
+        }
+
+        void offer(T n) {
+            queue.addLast(n);
+            if (queue.size() > capacity) queue.removeFirst();
+            schedule();
+        }
+
+        void error(Throwable err) {
+            error = err;
+            complete();
+        }
+
+        void complete() {
+            done = true;
+            schedule();
+        }
+
+        void schedule() {
+            if (scheduled) return;
+            scheduled = true;
+            worker.schedule(this::drain);
+        }
+
+        void drain() {
+            scheduled = false;
+            T n;
+            while ((n = queue.pollFirst()) != null && !s.isDisposed()) s.onNext(n);
+            if (!done) return;
+            if (error != null) s.onError(error);
+            else s.onComplete();
+        }
+    }
+
+    /**
+     * Runs the tasks due in batch, the tasks they schedule run in the next batch. All the workers share the queue, so
+     * tasks run in the order they are due.
+     */
+    private static class LoopScheduler extends Scheduler {
+        private final Consumer<Runnable> loop;
+        private final ArrayDeque<Task> due = new ArrayDeque<>();
+        private boolean scheduled;
+
+        LoopScheduler(Consumer<Runnable> loop) { this.loop = loop; }
+
+        @Override public Worker createWorker() { return new LoopWorker(); }
+
+        private void submit(Task task) {
+            due.addLast(task);
+            if (scheduled) return;
+            scheduled = true;
+            loop.accept(this::run);
+        }
+
+        private void run() {
+            scheduled = false;
+            for (int n = due.size(); n > 0; n--) {
+                Task task = due.removeFirst();
+                try {
+                    task.run();
+                } catch (Throwable err) {
+                    RxJavaPlugins.onError(err);
+                }
+            }
+            if (!due.isEmpty() && !scheduled) {
+                scheduled = true;
+                loop.accept(this::run);
+            }
+        }
+
+        private class LoopWorker extends Worker {
+            private final CompositeDisposable tasks = new CompositeDisposable();
+
+            @Override public Disposable schedule(Runnable run, long delay, TimeUnit unit) {
+                if (tasks.isDisposed()) return Disposables.disposed();
+                Task task = new Task(run, tasks);
+                tasks.add(task);
+                long ms = unit.toMillis(delay);
+                if (ms <= 0) submit(task);
+                else {
+                    task.timer = new Timer() {
+                        @Override public void run() { submit(task); }
+                    };
+                    task.timer.schedule((int) ms);
+                }
+                return task;
+            }
+
+            @Override public void dispose() { tasks.dispose(); }
+
+            @Override public boolean isDisposed() { return tasks.isDisposed(); }
+        }
+    }
+
+    private static class Task implements Runnable, Disposable {
+        final Runnable run;
+        final CompositeDisposable parent;
+        Timer timer;
+        boolean disposed;
+
+        Task(Runnable run, CompositeDisposable parent) {
+            this.run = run;
+            this.parent = parent;
+        }
+
+        @Override public void run() {
+            if (disposed) return;
+            disposed = true;
+            parent.delete(this);
+            run.run();
+        }
+
+        @Override public void dispose() {
+            if (disposed) return;
+            disposed = true;
+            parent.delete(this);
+            if (timer != null) timer.cancel();
+        }
+
+        @Override public boolean isDisposed() { return disposed; }
+    }
+
+    private static native void microtask(Runnable run) /*-{
+        $wnd.Promise.resolve().then($entry(function () { run.@java.lang.Runnable::run()(); }));
+    }-*/;
+}
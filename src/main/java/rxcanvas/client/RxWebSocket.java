@@ -0,0 +1,101 @@
+package rxcanvas.client;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import java.util.HashMap;
+import java.util.Map;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Transport to the relay server (the {@code relay} module) through a WebSocket, so browsers without cast hardware
+ * can share the canvas. Each text frame is a header line and the message, the header is the namespace and, from the
+ * page, the id the server acknowledges once the message is relayed ({@code ack <id>}), so the send queue window
+ * works as with a cast session.
+ */
+public class RxWebSocket implements Transport {
+    static final String ACK = "ack";
+
+    private final WebSocket socket;
+    private final PublishSubject<String[]> frames = PublishSubject.create(); // {namespace, message}
+    private final Map<Integer, CompletableEmitter> pending = new HashMap<>();
+    private int next;
+
+    private RxWebSocket(WebSocket socket) { this.socket = socket; }
+
+    public static native boolean isSupported() /*-{
+        return !!$wnd.WebSocket;
+    }-*/;
+
+    /** Emits the transport once connected, errors when the connection closes. */
+    public static Observable<Transport> connect(String url) {
+        return Observable.create(s -> {
+            WebSocket socket = new WebSocket(url);
+            RxWebSocket transport = new RxWebSocket(socket);
+            socket.onopen = e -> s.onNext(transport);
+            socket.onmessage = e -> transport.receive((String) e.data);
+            socket.onclose = e -> {
+                IllegalStateException err = new IllegalStateException("websocket " + url + " closed: " + e.code);
+                transport.frames.onError(err);
+                for (CompletableEmitter ack : transport.pending.values()) ack.onError(err);
+                transport.pending.clear();
+                s.onError(err);
+            };
+            s.setCancellable(() -> {
+                socket.onclose = null;
+                socket.close();
+            });
+        });
+    }
+
+    @Override public Completable send(String namespace, String message) {
+        return Completable.create(s -> {
+            int id = next++;
+            pending.put(id, s);
+            s.setCancellable(() -> pending.remove(id));
+            socket.send(namespace + " " + id + "\n" + message);
+        });
+    }
+
+    @Override public Observable<String> messages(String namespace) {
+        return frames.filter(frame -> frame[0].equals(namespace)).map(frame -> frame[1]);
+    }
+
+    private void receive(String frame) {
+        int eol = frame.indexOf('\n');
+        String header = eol < 0 ? frame : frame.substring(0, eol), message = eol < 0 ? "" : frame.substring(eol + 1);
+        if (header.startsWith(ACK + " ")) {
+            CompletableEmitter ack = pending.remove(Integer.parseInt(header.substring(ACK.length() + 1)));
+            if (ack != null) ack.onComplete();
+        } else {
+            frames.onNext(new String[] { header, message });
+        }
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    public static class WebSocket {
+        public Listener<Object> onopen;
+        public Listener<MessageEvent> onmessage;
+        public Listener<CloseEvent> onclose;
+        public WebSocket(String url) {}
+        public native void send(String data);
+        public native void close();
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    public static class MessageEvent {
+        public Object data;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    public static class CloseEvent {
+        public int code;
+    }
+
+    @FunctionalInterface @JsFunction interface Listener<T> {
+        void apply(T event);
+    }
+}
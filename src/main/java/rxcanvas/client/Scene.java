@@ -0,0 +1,312 @@
+package rxcanvas.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retained model of the painted segments. Coordinates are stored in a flat array indexed by segment id, and a
+ * uniform grid maps each cell to the segments crossing it, so hit tests and region redraws only visit the segments
+ * nearby. Ids grow in paint order, which is also the order to repaint them. Each segment also gets a sequence
+ * number, which unlike ids survives {@link #compact() compaction}, so replicas can ask for the segments they miss.
+ */
+public class Scene {
+    static final int CELL = 64;
+    private static final int REMOVED = -1;
+
+    private final List<String> colors = new ArrayList<>();
+    private final List<Double> widths = new ArrayList<>();
+    private final Map<String, Integer> styleIndex = new HashMap<>();
+    private final Map<Integer, IntList> grid = new HashMap<>();
+    private double[] coords = new double[6 * 256];
+    private double[] profiles = new double[2 * 256]; // start and end width, NaN if constant
+    private int[] styles = new int[256];
+    private int[] seqs = new int[256];
+    private int seq;
+    private int[] seen = new int[256];
+    private int stamp;
+    private int size;
+    private int live;
+
+    /** Number of segments ever added, the next id. */
+    public int size() { return size; }
+
+    /** Number of segments not removed. */
+    public int live() { return live; }
+
+    /** Sequence number of the last added segment, -1 if none. */
+    public int seq() { return seq - 1; }
+
+    public int seq(int id) { return seqs[id]; }
+
+    /** First id with a sequence number greater than {@code seq}, or {@link #size()} if none. */
+    public int after(int seq) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seqs[mid] <= seq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public int add(Stroke stroke) {
+        if (size == styles.length) grow();
+        int id = size++;
+        for (int i = 0; i < 3; i++) {
+            coords[id * 6 + i * 2] = stroke.line[i][0];
+            coords[id * 6 + i * 2 + 1] = stroke.line[i][1];
+        }
+        styles[id] = style(stroke.color, stroke.stroke);
+        profiles[id * 2] = stroke.widths == null ? Double.NaN : stroke.widths[0];
+        profiles[id * 2 + 1] = stroke.widths == null ? Double.NaN : stroke.widths[1];
+        seqs[id] = seq++;
+        double[] b = bounds(id);
+        forEachCell(b[0], b[1], b[2], b[3], key -> grid.computeIfAbsent(key, k -> new IntList()).add(id));
+        live++;
+        return id;
+    }
+
+    public boolean isLive(int id) { return styles[id] != REMOVED; }
+
+    public Stroke get(int id) {
+        Stroke stroke = new Stroke();
+        stroke.color = colors.get(styles[id]);
+        stroke.stroke = widths.get(styles[id]);
+        int o = id * 6;
+        stroke.line = new double[][] {
+                { coords[o], coords[o + 1] }, { coords[o + 2], coords[o + 3] }, { coords[o + 4], coords[o + 5] } };
+        if (!Double.isNaN(profiles[id * 2])) stroke.widths = new double[] { profiles[id * 2], profiles[id * 2 + 1] };
+        return stroke;
+    }
+
+    /**
+     * Removes the segments whose ink is within {@code radius} of the point.
+     *
+     * @return the area to repaint {x, y, w, h}, or null if nothing was hit
+     */
+    public double[] erase(double x, double y, double radius) {
+        double[] dirty = null;
+        for (int id : hits(x, y, radius)) {
+            double[] b = remove(id);
+            dirty = dirty == null ? b : union(dirty, b);
+        }
+        return dirty;
+    }
+
+    /** Live segments whose ink is within {@code radius} of the point, in paint order. */
+    public int[] hits(double x, double y, double radius) {
+        IntList out = new IntList();
+        for (int id : query(x - radius, y - radius, radius * 2, radius * 2)) {
+            if (distance(id, x, y) <= radius + widths.get(styles[id]) / 2) out.add(id);
+        }
+        return Arrays.copyOf(out.items, out.size);
+    }
+
+    /** Removes the live segment, returns the area to repaint {x, y, w, h}. */
+    public double[] remove(int id) {
+        double[] b = bounds(id);
+        remove(id, b);
+        return b;
+    }
+
+    /** Live segments whose bounds intersect the area, in paint order. */
+    public int[] query(double x, double y, double w, double h) {
+        stamp++;
+        IntList out = new IntList();
+        forEachCell(x, y, w, h, key -> {
+            IntList cell = grid.get(key);
+            if (cell == null) return;
+            for (int i = 0; i < cell.size; i++) {
+                int id = cell.items[i];
+                if (seen[id] == stamp) continue;
+                seen[id] = stamp;
+                double[] b = bounds(id);
+                if (b[0] < x + w && b[0] + b[2] > x && b[1] < y + h && b[1] + b[3] > y) out.add(id);
+            }
+        });
+        int[] ids = Arrays.copyOf(out.items, out.size);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Live segments from the id on whose bounds intersect the area, in paint order. Visits the segments added since
+     * instead of the grid cells, for when they are few.
+     */
+    public int[] query(int from, double x, double y, double w, double h) {
+        IntList out = new IntList();
+        for (int id = from; id < size; id++) {
+            if (!isLive(id)) continue;
+            double[] b = bounds(id);
+            if (b[0] < x + w && b[0] + b[2] > x && b[1] < y + h && b[1] + b[3] > y) out.add(id);
+        }
+        return Arrays.copyOf(out.items, out.size);
+    }
+
+    /** True if a live segment matches, see {@link #find}. */
+    public boolean contains(Stroke stroke, double tolerance) {
+        return find(stroke, tolerance) >= 0;
+    }
+
+    /**
+     * The last live segment with the same color, and its width and all its points within {@code tolerance} of these
+     * (so segments round-tripped through a quantizing codec match), or -1.
+     */
+    public int find(Stroke stroke, double tolerance) {
+        double[][] l = stroke.line;
+        int[] ids = query(l[2][0] - tolerance, l[2][1] - tolerance, tolerance * 2, tolerance * 2);
+        for (int n = ids.length - 1; n >= 0; n--) {
+            int id = ids[n], style = styles[id];
+            if (!colors.get(style).equals(stroke.color)) continue;
+            if (Math.abs(widths.get(style) - stroke.stroke) > tolerance) continue;
+            boolean same = true;
+            for (int i = 0; same && i < 6; i++) same = Math.abs(coords[id * 6 + i] - l[i / 2][i % 2]) <= tolerance;
+            if (same) return id;
+        }
+        return -1;
+    }
+
+    public List<Stroke> strokes(int[] ids) {
+        List<Stroke> out = new ArrayList<>(ids.length);
+        for (int id : ids) out.add(get(id));
+        return out;
+    }
+
+    /** All live segments, in paint order. */
+    public List<Stroke> strokes() {
+        List<Stroke> out = new ArrayList<>(live);
+        for (int id = 0; id < size; id++) if (isLive(id)) out.add(get(id));
+        return out;
+    }
+
+    public void clear() {
+        grid.clear();
+        size = 0;
+        live = 0;
+    }
+
+    /** Drops the removed segments, collapsing the scene into its live segments. Ids change, sequences don't. */
+    public void compact() {
+        if (live == size) return;
+        int to = 0;
+        for (int id = 0; id < size; id++) {
+            if (!isLive(id)) continue;
+            System.arraycopy(coords, id * 6, coords, to * 6, 6);
+            System.arraycopy(profiles, id * 2, profiles, to * 2, 2);
+            styles[to] = styles[id];
+            seqs[to] = seqs[id];
+            to++;
+        }
+        size = to;
+        grid.clear();
+        for (int id = 0; id < size; id++) {
+            int added = id;
+            double[] b = bounds(id);
+            forEachCell(b[0], b[1], b[2], b[3], key -> grid.computeIfAbsent(key, k -> new IntList()).add(added));
+        }
+    }
+
+    private void remove(int id, double[] b) {
+        forEachCell(b[0], b[1], b[2], b[3], key -> {
+            IntList cell = grid.get(key);
+            if (cell != null && cell.remove(id) && cell.size == 0) grid.remove(key);
+        });
+        styles[id] = REMOVED;
+        live--;
+    }
+
+    /** Bounds of the ink {x, y, w, h}, the bezier is inside the hull of its points, padded by half the width. */
+    private double[] bounds(int id) {
+        int o = id * 6;
+        double minX = Math.min(coords[o], Math.min(coords[o + 2], coords[o + 4]));
+        double maxX = Math.max(coords[o], Math.max(coords[o + 2], coords[o + 4]));
+        double minY = Math.min(coords[o + 1], Math.min(coords[o + 3], coords[o + 5]));
+        double maxY = Math.max(coords[o + 1], Math.max(coords[o + 3], coords[o + 5]));
+        double pad = widths.get(styles[id]) / 2 + 1;
+        return new double[] { minX - pad, minY - pad, maxX - minX + pad * 2, maxY - minY + pad * 2 };
+    }
+
+    /** Distance to the curve, approximated by the polyline through 5 samples of the bezier. */
+    private double distance(int id, double x, double y) {
+        int o = id * 6;
+        double min = Double.MAX_VALUE, px = coords[o], py = coords[o + 1];
+        for (int i = 1; i <= 4; i++) {
+            double t = i / 4., u = 1 - t;
+            // cubic with the first control point at the start, as painted by the renderer
+            double a = u * u * u + 3 * u * u * t, b = 3 * u * t * t, c = t * t * t;
+            double qx = a * coords[o] + b * coords[o + 2] + c * coords[o + 4];
+            double qy = a * coords[o + 1] + b * coords[o + 3] + c * coords[o + 5];
+            min = Math.min(min, segmentDistance(x, y, px, py, qx, qy));
+            px = qx; py = qy;
+        }
+        return min;
+    }
+
+    static double segmentDistance(double x, double y, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0, dy = y1 - y0, len = dx * dx + dy * dy;
+        double t = len == 0 ? 0 : Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / len));
+        double ex = x0 + t * dx - x, ey = y0 + t * dy - y;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    static double[] union(double[] a, double[] b) {
+        double x = Math.min(a[0], b[0]), y = Math.min(a[1], b[1]);
+        return new double[] { x, y, Math.max(a[0] + a[2], b[0] + b[2]) - x, Math.max(a[1] + a[3], b[1] + b[3]) - y };
+    }
+
+    private int style(String color, double width) {
+        String key = color + "/" + width;
+        Integer index = styleIndex.get(key);
+        if (index != null) return index;
+        colors.add(color); widths.add(width);
+        styleIndex.put(key, colors.size() - 1);
+        return colors.size() - 1;
+    }
+
+    private void grow() {
+        coords = Arrays.copyOf(coords, coords.length * 2);
+        profiles = Arrays.copyOf(profiles, profiles.length * 2);
+        styles = Arrays.copyOf(styles, styles.length * 2);
+        seqs = Arrays.copyOf(seqs, seqs.length * 2);
+        seen = Arrays.copyOf(seen, seen.length * 2);
+    }
+
+    private static void forEachCell(double x, double y, double w, double h, CellConsumer fn) {
+        forEachCell(CELL, x, y, w, h, fn);
+    }
+
+    /** Calls back with the key of each {@code cell} sized square intersecting the area, 16 bits per axis. */
+    static void forEachCell(int cell, double x, double y, double w, double h, CellConsumer fn) {
+        int x0 = (int) Math.floor(x / cell), x1 = (int) Math.floor((x + w) / cell);
+        int y0 = (int) Math.floor(y / cell), y1 = (int) Math.floor((y + h) / cell);
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) fn.accept((cx & 0xffff) << 16 | cy & 0xffff);
+        }
+    }
+
+    @FunctionalInterface interface CellConsumer {
+        void accept(int key);
+    }
+
+    static class IntList {
+        int[] items = new int[8];
+        int size;
+
+        void add(int v) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = v;
+        }
+
+        boolean remove(int v) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] != v) continue;
+                System.arraycopy(items, i + 1, items, i, --size - i);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package rxcanvas.client;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Sliding window over the last 3 points of a drag, backed by a flat ring of coordinates and, for variable width ink,
+ * another of width factors. The same instance is emitted for each new point, so it must be consumed (or copied with
+ * {@link #toLine()} and {@link #toWidths()}) synchronously.
+ */
+public class Segment {
+    private final double[] ring = new double[6];
+    private final double[] weights = new double[3];
+    private final boolean smooth;
+    private final boolean weighted;
+    private int count;
+
+    private Segment(boolean smooth, boolean weighted) {
+        this.smooth = smooth;
+        this.weighted = weighted;
+    }
+
+    /** Replaces {@code map(toPoint).buffer(3, 1)} without allocating a point array and a list per event. */
+    public static <T> ObservableTransformer<T, Segment> segments(ToDoubleFunction<T> x, ToDoubleFunction<T> y) {
+        return segments(x, y, 0, false);
+    }
+
+    /**
+     * Windows of the points kept by a {@link Simplifier} with the given tolerance. If smooth, each window is turned
+     * into a curve between the midpoints of its sides, so consecutive segments join tangentially.
+     */
+    public static <T> ObservableTransformer<T, Segment> segments(
+            ToDoubleFunction<T> x, ToDoubleFunction<T> y, double tolerance, boolean smooth) {
+        return segments(x, y, null, tolerance, smooth);
+    }
+
+    /**
+     * Like {@link #segments(ToDoubleFunction, ToDoubleFunction, double, boolean)}, with the width factor of each kept
+     * point taken from the event keeping it, or a constant width if {@code w} is null.
+     */
+    public static <T> ObservableTransformer<T, Segment> segments(ToDoubleFunction<T> x, ToDoubleFunction<T> y,
+            ToDoubleFunction<T> w, double tolerance, boolean smooth) {
+        return o -> Observable.defer(() -> {
+            Simplifier simplifier = new Simplifier(tolerance);
+            Segment window = new Segment(smooth, w != null);
+            return o.filter(e -> simplifier.push(x.applyAsDouble(e), y.applyAsDouble(e))
+                    && window.push(simplifier.x(), simplifier.y(), w == null ? 1 : w.applyAsDouble(e)))
+                    .map(e -> window)
+                    .concatWith(Observable.create(s -> {
+                        if (simplifier.flush() && window.push(simplifier.x(), simplifier.y(), window.w(2))) {
+                            s.onNext(window);
+                        }
+                        if (smooth && window.count >= 3) {
+                            // repeat the last point, so the line reaches it instead of its last midpoint
+                            window.push(window.x(2), window.y(2), window.w(2));
+                            s.onNext(window);
+                        }
+                        s.onComplete();
+                    }));
+        });
+    }
+
+    /** Returns true once the window is full. */
+    public boolean push(double x, double y) { return push(x, y, 1); }
+
+    public boolean push(double x, double y, double w) {
+        int i = count % 3;
+        ring[i * 2] = x; ring[i * 2 + 1] = y;
+        weights[i] = w;
+        count++;
+        return count >= 3;
+    }
+
+    public double x(int i) { return ring[(count + i) % 3 * 2]; }
+
+    public double y(int i) { return ring[(count + i) % 3 * 2 + 1]; }
+
+    public double w(int i) { return weights[(count + i) % 3]; }
+
+    /** Copy of the window points oldest first or, if smooth, the curve from the first to the second midpoint. */
+    public double[][] toLine() {
+        if (!smooth) return new double[][] { { x(0), y(0) }, { x(1), y(1) }, { x(2), y(2) } };
+        boolean first = count == 3; // the line starts at its first point, not at a midpoint
+        return new double[][] {
+                first ? new double[] { x(0), y(0) } : new double[] { (x(0) + x(1)) / 2, (y(0) + y(1)) / 2 },
+                { x(1), y(1) },
+                { (x(1) + x(2)) / 2, (y(1) + y(2)) / 2 } };
+    }
+
+    /** The width factors at the ends of {@link #toLine()}, null if the width is constant. */
+    public double[] toWidths() {
+        if (!weighted) return null;
+        if (!smooth) return new double[] { w(0), w(2) };
+        return new double[] { count == 3 ? w(0) : (w(0) + w(1)) / 2, (w(1) + w(2)) / 2 };
+    }
+}
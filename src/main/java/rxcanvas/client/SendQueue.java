@@ -0,0 +1,130 @@
+package rxcanvas.client;
+
+import static java.lang.Boolean.TRUE;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Strokes waiting to be cast. At most {@code window} messages are in flight, meanwhile new strokes wait in the
+ * queue and the next message takes as many as fit in the budget. When the queue exceeds its capacity the overflow
+ * policy applies: {@code MERGE} collapses adjacent segments of the same line into coarser ones, {@code DROP}
+ * discards the oldest strokes and {@code BUFFER} keeps everything (unbounded, the previous behaviour).
+ */
+public class SendQueue {
+    public enum Overflow { BUFFER, DROP, MERGE }
+
+    private final ArrayDeque<Stroke> queue = new ArrayDeque<>();
+    private final StrokeCodec codec;
+    private final int budget;
+    private final int window;
+    private final int capacity;
+    private final Overflow overflow;
+    private int inFlight;
+    private boolean done; // no more strokes, completes once the queue is sent
+
+    public SendQueue(StrokeCodec codec, int budget, int window, int capacity, Overflow overflow) {
+        this.codec = codec;
+        this.budget = budget;
+        this.window = window;
+        this.capacity = capacity;
+        this.overflow = overflow;
+    }
+
+    public int size() { return queue.size(); }
+
+    public int inFlight() { return inFlight; }
+
+    /** Sends the batches of strokes, each message through {@code send}, completes once all of them are sent. */
+    public Completable send(Observable<List<Stroke>> strokes, Function<String, Completable> send) {
+        return Completable.create(s -> {
+            CompositeDisposable disposables = new CompositeDisposable();
+            s.setDisposable(disposables);
+            disposables.add(strokes.subscribe(batch -> {
+                for (Stroke stroke : batch) offer(stroke);
+                drain(s, disposables, send);
+                Metrics.SEND_QUEUE.add(queue.size());
+            }, s::onError, () -> {
+                done = true;
+                drain(s, disposables, send);
+            }));
+        });
+    }
+
+    public void offer(Stroke stroke) {
+        queue.addLast(stroke);
+        if (queue.size() <= capacity) return;
+        if (overflow == Overflow.MERGE) merge();
+        if (overflow != Overflow.BUFFER) while (queue.size() > capacity) queue.removeFirst();
+    }
+
+    /** Takes the oldest strokes fitting in one message. */
+    public List<Stroke> poll() {
+        List<Stroke> out = new ArrayList<>();
+        int cost = 0;
+        while (!queue.isEmpty()) {
+            int c = codec.cost(queue.peekFirst());
+            if (!out.isEmpty() && cost + c > budget) break;
+            out.add(queue.removeFirst());
+            cost += c;
+        }
+        return out;
+    }
+
+    private void drain(CompletableEmitter s, CompositeDisposable disposables, Function<String, Completable> send) {
+        while (inFlight < window && !queue.isEmpty()) {
+            inFlight++;
+            disposables.add(send.apply(codec.encode(poll())).subscribe(() -> {
+                inFlight--;
+                drain(s, disposables, send);
+            }, s::onError));
+        }
+        if (done && inFlight == 0 && queue.isEmpty()) s.onComplete();
+    }
+
+    /**
+     * Merges each segment with the next one when it continues the same line (the {@code buffer(3, 1)} windows share
+     * two points, smoothed segments start at the end of the previous one), keeping the first point, the end of the
+     * first segment and the last point, so the queue halves while the line keeps its ends and rough shape.
+     */
+    private void merge() {
+        ArrayDeque<Stroke> merged = new ArrayDeque<>(queue.size());
+        Iterator<Stroke> it = queue.iterator();
+        Stroke pending = it.next();
+        while (it.hasNext()) {
+            Stroke next = it.next();
+            if (continues(pending, next)) {
+                Stroke m = new Stroke();
+                m.color = pending.color;
+                m.stroke = pending.stroke;
+                m.line = new double[][] { pending.line[0], pending.line[2], next.line[2] };
+                if (pending.widths != null) m.widths = new double[] { pending.widths[0], next.widths[1] };
+                merged.addLast(m);
+                pending = it.hasNext() ? it.next() : null;
+                if (pending == null) break;
+            } else {
+                merged.addLast(pending);
+                pending = next;
+            }
+        }
+        if (pending != null) merged.addLast(pending);
+        queue.clear();
+        queue.addAll(merged);
+    }
+
+    private static boolean continues(Stroke a, Stroke b) {
+        if (!a.color.equals(b.color) || !a.stroke.equals(b.stroke)) return false;
+        // an undo removes the segment it matches exactly, and a width profile only merges with another one
+        if (TRUE.equals(a.undo) || TRUE.equals(b.undo) || (a.widths == null) != (b.widths == null)) return false;
+        boolean window = a.line[1][0] == b.line[0][0] && a.line[1][1] == b.line[0][1]
+                && a.line[2][0] == b.line[1][0] && a.line[2][1] == b.line[1][1];
+        return window || a.line[2][0] == b.line[0][0] && a.line[2][1] == b.line[0][1];
+    }
+}
@@ -0,0 +1,68 @@
+package rxcanvas.client;
+
+/**
+ * Streaming polyline simplification. A point is only kept when one of the points skipped since the last kept one
+ * would be farther than the tolerance from the straight line replacing them, like a windowed Ramer-Douglas-Peucker.
+ * Points are held back while the line stays straight, at most {@link #MAX_PENDING} to bound the ink latency.
+ */
+public class Simplifier {
+    static final int MAX_PENDING = 8;
+
+    private final double tolerance;
+    private final double[] pending = new double[MAX_PENDING * 2];
+    private int size;
+    private boolean anchored;
+    private double ax, ay; // last kept point
+    private double x, y; // last emitted point
+
+    public Simplifier(double tolerance) { this.tolerance = tolerance; }
+
+    /** Returns true if a point must be kept, available as {@link #x()} and {@link #y()}. */
+    public boolean push(double px, double py) {
+        if (!anchored) {
+            anchored = true;
+            return emit(px, py);
+        }
+        if (tolerance <= 0) return emit(px, py);
+        double lx = size == 0 ? ax : pending[size * 2 - 2], ly = size == 0 ? ay : pending[size * 2 - 1];
+        if (Math.abs(px - lx) < tolerance && Math.abs(py - ly) < tolerance) return false; // too close to matter
+        for (int i = 0; i < size; i++) {
+            if (Scene.segmentDistance(pending[i * 2], pending[i * 2 + 1], ax, ay, px, py) > tolerance) {
+                // the previous point was the last one the straight line could replace
+                size = 0;
+                add(px, py);
+                return emit(lx, ly);
+            }
+        }
+        if (size == MAX_PENDING) {
+            size = 0;
+            return emit(px, py);
+        }
+        add(px, py);
+        return false;
+    }
+
+    /** Keeps the last point held back, if any, at the end of the line. */
+    public boolean flush() {
+        if (size == 0) return false;
+        double px = pending[size * 2 - 2], py = pending[size * 2 - 1];
+        size = 0;
+        return emit(px, py);
+    }
+
+    public double x() { return x; }
+
+    public double y() { return y; }
+
+    private void add(double px, double py) {
+        pending[size * 2] = px;
+        pending[size * 2 + 1] = py;
+        size++;
+    }
+
+    private boolean emit(double px, double py) {
+        ax = x = px;
+        ay = y = py;
+        return true;
+    }
+}
@@ -0,0 +1,13 @@
+package rxcanvas.client;
+
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+@JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+public class Stroke {
+    public String color;
+    public Double stroke;
+    public double[][] line;
+    public double[] widths; // {start, end} if the width varies along the line, at most the stroke width
+    public Boolean undo; // true to remove the matching segment instead of painting it
+}
@@ -0,0 +1,15 @@
+package rxcanvas.client;
+
+import java.util.List;
+
+/** Wire format of the strokes sent through the cast message bus, which only accepts string messages. */
+public interface StrokeCodec {
+
+    /** Encode the batch into one message. Each message is self-contained, decoders keep no state between them. */
+    String encode(List<Stroke> strokes);
+
+    List<Stroke> decode(String message);
+
+    /** Estimated upper bound of the chars this stroke adds to a message, used to respect the message budget. */
+    int cost(Stroke stroke);
+}
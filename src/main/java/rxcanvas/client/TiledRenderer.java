@@ -0,0 +1,211 @@
+package rxcanvas.client;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.canvas.client.Canvas;
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.dom.client.CanvasElement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the ink in offscreen tiles and composites onto the visible canvas only the tiles changed since the last
+ * frame, so the cost of a frame is proportional to the change instead of the canvas size. The in-progress ink (the
+ * predictions) is a separate layer painted over the tiles, and removed by compositing again the tiles below it, so
+ * pixels are never read back. Tiles are created on first ink, blank areas cost nothing.
+ */
+public class TiledRenderer implements Renderer {
+    static final int TILE = 256;
+
+    private final Context2d ctx;
+    private double ratio;
+    private final Map<Integer, Tile> tiles = new HashMap<>();
+    private final Set<Integer> dirty = new HashSet<>();
+    private final List<Stroke> predictions = new ArrayList<>();
+    private final Set<Integer> underPredictions = new HashSet<>();
+    private boolean scheduled;
+
+    /** The context must be already scaled by the ratio, like for {@link CanvasRenderer}. */
+    public TiledRenderer(Context2d ctx, double ratio) {
+        this.ctx = ctx;
+        this.ratio = ratio;
+    }
+
+    @Override public void stroke(Stroke stroke) {
+        forEachTile(bounds(stroke), key -> tile(key).queue.add(stroke));
+        schedule();
+    }
+
+    @Override public void predict(Stroke stroke) {
+        predictions.add(stroke);
+        schedule();
+    }
+
+    @Override public void repaint(double[] rect, List<Stroke> strokes) {
+        repaint(rect, strokes, emptyMap());
+    }
+
+    /** The tiles are copied once their queued operations are applied, blank tiles aren't. */
+    @Override public Snapshot snapshot() {
+        draw();
+        Map<Integer, CanvasElement> copies = new HashMap<>();
+        for (Map.Entry<Integer, Tile> tile : tiles.entrySet()) {
+            Canvas copy = CanvasRenderer.copy(tile.getValue().canvas.getCanvasElement());
+            copies.put(tile.getKey(), copy.getCanvasElement());
+        }
+        return new Copies(copies);
+    }
+
+    /** Queues the repaint of the tiles in the area, each restored from its copy if any or else cleared. */
+    private void repaint(double[] rect, List<Stroke> strokes, Map<Integer, CanvasElement> from) {
+        Map<Integer, List<Stroke>> byTile = new HashMap<>();
+        for (Stroke stroke : strokes) {
+            forEachTile(bounds(stroke), key -> byTile.computeIfAbsent(key, k -> new ArrayList<>()).add(stroke));
+        }
+        Set<Integer> keys = new HashSet<>();
+        if (rect == null) {
+            keys.addAll(tiles.keySet());
+            keys.addAll(byTile.keySet());
+            keys.addAll(from.keySet());
+        } else {
+            forEachTile(rect, key -> {
+                if (tiles.containsKey(key) || byTile.containsKey(key) || from.containsKey(key)) keys.add(key);
+            });
+        }
+        for (int key : keys) {
+            tile(key).queue.add(new CanvasRenderer.Region(rect, byTile.getOrDefault(key, emptyList()), from.get(key)));
+        }
+        schedule();
+    }
+
+    /**
+     * At the same ratio the tiles are kept, in css px they don't depend on the canvas size, and are composited again
+     * into the resized canvas. The tiles now outside the canvas are dropped, as they would miss the changes.
+     */
+    @Override public boolean resize(double width, double height, double ratio) {
+        CanvasElement canvas = ctx.getCanvas();
+        canvas.setWidth((int) Math.round(width * ratio));
+        canvas.setHeight((int) Math.round(height * ratio));
+        ctx.scale(ratio, ratio);
+        underPredictions.clear();
+        if (ratio != this.ratio) {
+            this.ratio = ratio;
+            tiles.clear();
+            dirty.clear();
+            return false;
+        }
+        tiles.keySet().removeIf(key -> x(key) >= width || y(key) >= height);
+        dirty.addAll(tiles.keySet());
+        schedule();
+        return true;
+    }
+
+    private Tile tile(int key) {
+        dirty.add(key);
+        return tiles.computeIfAbsent(key, k -> new Tile(k, ratio));
+    }
+
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        AnimationScheduler.get().requestAnimationFrame(timestamp -> flush());
+    }
+
+    private void flush() {
+        scheduled = false;
+        double start = Metrics.now();
+        draw();
+
+        // composite the changed tiles, and the ones below the last predictions to remove them
+        dirty.addAll(underPredictions);
+        underPredictions.clear();
+        for (int key : dirty) {
+            double x = x(key), y = y(key);
+            ctx.clearRect(x, y, TILE, TILE);
+            Tile tile = tiles.get(key);
+            if (tile != null) ctx.drawImage(tile.canvas.getCanvasElement(), x, y, TILE, TILE);
+        }
+        dirty.clear();
+
+        if (!predictions.isEmpty()) {
+            ctx.save();
+            ctx.setLineCap(Context2d.LineCap.ROUND);
+            CanvasRenderer.draw(ctx, predictions);
+            ctx.restore();
+            for (Stroke prediction : predictions) forEachTile(bounds(prediction), underPredictions::add);
+            predictions.clear();
+            schedule(); // to remove them
+        }
+        Metrics.frame(start);
+    }
+
+    /** Applies the queued operations to the tiles, they are composited in the next frame. */
+    private void draw() {
+        for (int key : dirty) {
+            Tile tile = tiles.get(key);
+            if (tile == null || tile.queue.isEmpty()) continue;
+            tile.ctx.save();
+            tile.ctx.setLineCap(Context2d.LineCap.ROUND);
+            CanvasRenderer.draw(tile.ctx, tile.queue);
+            tile.ctx.restore();
+            tile.queue.clear();
+        }
+    }
+
+    /** Tiles intersecting the area {x, y, w, h}, ignoring the ones outside the canvas. */
+    private void forEachTile(double[] r, Scene.CellConsumer fn) {
+        double width = ctx.getCanvas().getWidth() / ratio, height = ctx.getCanvas().getHeight() / ratio;
+        Scene.forEachCell(TILE, r[0], r[1], r[2], r[3], key -> {
+            double x = x(key), y = y(key);
+            if (x >= 0 && y >= 0 && x < width && y < height) fn.accept(key);
+        });
+    }
+
+    private static double x(int key) { return (short) (key >>> 16) * TILE; }
+
+    private static double y(int key) { return (short) key * TILE; }
+
+    /** Bounds of the ink {x, y, w, h}, padded by half the width. */
+    static double[] bounds(Stroke stroke) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (double[] p : stroke.line) {
+            minX = Math.min(minX, p[0]); maxX = Math.max(maxX, p[0]);
+            minY = Math.min(minY, p[1]); maxY = Math.max(maxY, p[1]);
+        }
+        double pad = stroke.stroke / 2 + 1;
+        return new double[] { minX - pad, minY - pad, maxX - minX + pad * 2, maxY - minY + pad * 2 };
+    }
+
+    private class Copies implements Snapshot {
+        final Map<Integer, CanvasElement> tiles;
+        Copies(Map<Integer, CanvasElement> tiles) { this.tiles = tiles; }
+        @Override public double bytes() {
+            double bytes = 0;
+            for (CanvasElement tile : tiles.values()) bytes += 4. * tile.getWidth() * tile.getHeight();
+            return bytes;
+        }
+        @Override public void restore(double[] rect, List<Stroke> strokes) {
+            repaint(rect, strokes, tiles);
+        }
+    }
+
+    private static class Tile {
+        final Canvas canvas = Canvas.createIfSupported();
+        final Context2d ctx;
+        final List<Object> queue = new ArrayList<>(); // Stroke or Region
+
+        Tile(int key, double ratio) {
+            canvas.setCoordinateSpaceWidth((int) Math.ceil(TILE * ratio));
+            canvas.setCoordinateSpaceHeight((int) Math.ceil(TILE * ratio));
+            ctx = canvas.getContext2d();
+            ctx.scale(ratio, ratio);
+            ctx.translate(-x(key), -y(key));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package rxcanvas.client;
+
+import static java.lang.Double.NaN;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input recorded as text, one event per line: its time in ms since the recording started, its type and arguments.
+ * {@code d id} starts a drag, {@code m id x y [pressure]} is a sample of the drag in canvas coordinates (the pressure
+ * only for pens), {@code u id} ends it, {@code k mode} is a mode key and {@code o color size} a change of the stroke
+ * options. Replaying the events through the same pipeline reproduces the drawing, widths included, at the original
+ * speed, accelerated or in virtual time.
+ */
+public class Trace {
+    public static final char DOWN = 'd', MOVE = 'm', UP = 'u', MODE = 'k', OPTIONS = 'o';
+
+    private final StringBuilder out = new StringBuilder();
+    private final Scheduler clock;
+    private final long start;
+    private int drags;
+
+    public Trace(Scheduler clock) {
+        this.clock = clock;
+        this.start = clock.now(MILLISECONDS);
+    }
+
+    /** Records the start of a drag, returns its id. */
+    public int down() {
+        int id = drags++;
+        line(DOWN).append(id).append('\n');
+        return id;
+    }
+
+    /** Records a sample of the drag, rounded to 1/100 px. */
+    public void move(int id, double x, double y) { move(id, x, y, Double.NaN); }
+
+    /** Records a sample of the drag with its pressure, if not NaN. */
+    public void move(int id, double x, double y, double pressure) {
+        StringBuilder line = line(MOVE).append(id).append(' ').append(round(x)).append(' ').append(round(y));
+        if (!Double.isNaN(pressure)) line.append(' ').append(round(pressure));
+        line.append('\n');
+    }
+
+    public void up(int id) { line(UP).append(id).append('\n'); }
+
+    public void mode(String mode) { line(MODE).append(mode).append('\n'); }
+
+    public void options(String color, double size) {
+        line(OPTIONS).append(color).append(' ').append(round(size)).append('\n');
+    }
+
+    public String export() { return out.toString(); }
+
+    private StringBuilder line(char type) {
+        return out.append(clock.now(MILLISECONDS) - start).append(' ').append(type).append(' ');
+    }
+
+    private static double round(double v) { return Math.round(v * 100) / 100.; }
+
+    /** Parses the events of a trace, ignoring the lines not understood. */
+    public static List<Event> parse(String trace) {
+        List<Event> out = new ArrayList<>();
+        for (String line : trace.split("\n")) {
+            String[] f = line.trim().split(" ");
+            if (f.length < 3 || f[1].length() != 1) continue;
+            long time = Long.parseLong(f[0]);
+            char type = f[1].charAt(0);
+            switch (type) {
+                case DOWN: case UP: out.add(new Event(time, type, Integer.parseInt(f[2]), 0, 0, NaN, null)); break;
+                case MOVE:
+                    out.add(new Event(time, type, Integer.parseInt(f[2]), Double.parseDouble(f[3]),
+                            Double.parseDouble(f[4]), f.length > 5 ? Double.parseDouble(f[5]) : NaN, null));
+                    break;
+                case MODE: out.add(new Event(time, type, 0, 0, 0, NaN, f[2])); break;
+                case OPTIONS: out.add(new Event(time, type, 0, Double.parseDouble(f[3]), 0, NaN, f[2])); break;
+                default: // newer event type
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Emits the events at their time divided by {@code speed}, or as fast as possible if 0. The delays are relative
+     * to the start of the replay, so rounding doesn't accumulate, and using a virtual time scheduler (e.g. a
+     * {@code TestScheduler}) the replay is deterministic.
+     */
+    public static Observable<Event> replay(List<Event> events, double speed, Scheduler scheduler) {
+        return Observable.defer(() -> {
+            long start = scheduler.now(MILLISECONDS);
+            return Observable.fromIterable(events).concatMap(e -> {
+                long delay = speed <= 0 ? 0 : start + (long) (e.time / speed) - scheduler.now(MILLISECONDS);
+                return delay <= 0 ? Observable.just(e) : Observable.timer(delay, MILLISECONDS, scheduler).map(n -> e);
+            });
+        });
+    }
+
+    /** Groups the samples into a stream per drag, like {@link RxPointer#drags} does with the pointer events. */
+    public static ObservableTransformer<Event, Observable<Event>> drags() {
+        return o -> o.publish(events -> events.filter(e -> e.type == DOWN).map(down -> events
+                .takeWhile(e -> e.type != UP || e.id != down.id)
+                .filter(e -> e.type == MOVE && e.id == down.id)));
+    }
+
+    public static class Event {
+        public final long time;
+        public final char type;
+        public final int id;
+        public final double x, y; // the size for options
+        public final double pressure; // of pen samples, NaN if unknown
+        public final String text; // the mode or the color for options
+
+        Event(long time, char type, int id, double x, double y, double pressure, String text) {
+            this.time = time;
+            this.type = type;
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.pressure = pressure;
+            this.text = text;
+        }
+    }
+}
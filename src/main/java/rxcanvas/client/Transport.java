@@ -0,0 +1,17 @@
+package rxcanvas.client;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+
+/**
+ * A connection of this page to the hub sharing the canvas, a cast receiver through a cast session or the relay
+ * server through a WebSocket. Messages are strings in a namespace (the cast channels), delivered in order.
+ */
+public interface Transport {
+
+    /** Sends the message, completes once the hub side has acknowledged it. */
+    Completable send(String namespace, String message);
+
+    /** Messages sent by the hub to this page. */
+    Observable<String> messages(String namespace);
+}
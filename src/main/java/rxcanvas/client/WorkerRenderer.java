@@ -0,0 +1,151 @@
+package rxcanvas.client;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.dom.client.CanvasElement;
+import com.google.gwt.typedarrays.shared.Float64Array;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsType;
+
+/**
+ * Transfers the canvas to a web worker ({@code render-worker.js}) and ships it the draw operations once per
+ * animation frame as a transferable {@code Float64Array}, so rasterization doesn't compete with input handling.
+ * Once transferred, the canvas element cannot be used for a 2d context in the main thread.
+ */
+public class WorkerRenderer implements Renderer {
+    // keep in sync with render-worker.js
+    static final int OP_SEGMENT = 1, OP_REGION = 2, OP_REGION_END = 3, OP_PREDICT = 4;
+
+    private final Worker worker;
+    private final List<String> colors = new ArrayList<>();
+    private final Map<String, Integer> colorIndex = new HashMap<>();
+    private double[] ops = new double[1024];
+    private int size;
+    private boolean scheduled;
+    private boolean predicted;
+
+    public WorkerRenderer(CanvasElement canvas, double ratio) {
+        worker = new Worker(GWT.getModuleBaseForStaticFiles() + "render-worker.js");
+        Init init = new Init();
+        init.canvas = transferControlToOffscreen(canvas);
+        init.ratio = ratio;
+        worker.postMessage(init, new Object[] { init.canvas });
+    }
+
+    public static native boolean isSupported() /*-{
+        return !!($wnd.Worker && $wnd.OffscreenCanvas && $wnd.HTMLCanvasElement.prototype.transferControlToOffscreen);
+    }-*/;
+
+    @Override public void stroke(Stroke stroke) {
+        segment(OP_SEGMENT, stroke);
+    }
+
+    @Override public void predict(Stroke stroke) {
+        predicted = true;
+        segment(OP_PREDICT, stroke);
+    }
+
+    @Override public void repaint(double[] rect, List<Stroke> strokes) {
+        ensure(5);
+        ops[size++] = OP_REGION;
+        for (int i = 0; i < 4; i++) ops[size++] = rect == null ? Double.NaN : rect[i];
+        for (Stroke stroke : strokes) segment(OP_SEGMENT, stroke);
+        ensure(1);
+        ops[size++] = OP_REGION_END;
+        schedule();
+    }
+
+    /** The transferred canvas can only be resized by the worker, which does it before the next frame. */
+    @Override public boolean resize(double width, double height, double ratio) {
+        Resize resize = new Resize();
+        resize.width = width;
+        resize.height = height;
+        resize.ratio = ratio;
+        worker.postMessage(resize, new Object[0]);
+        return false;
+    }
+
+    /** The pixels are in the worker, undo repaints from the scene. */
+    @Override public Snapshot snapshot() { return null; }
+
+    private void segment(int op, Stroke stroke) {
+        ensure(11);
+        Integer color = colorIndex.get(stroke.color);
+        if (color == null) {
+            colors.add(stroke.color);
+            colorIndex.put(stroke.color, color = colors.size() - 1);
+        }
+        ops[size++] = op;
+        ops[size++] = color;
+        ops[size++] = stroke.stroke;
+        for (double[] p : stroke.line) {
+            ops[size++] = p[0];
+            ops[size++] = p[1];
+        }
+        ops[size++] = stroke.widths != null ? stroke.widths[0] : Double.NaN;
+        ops[size++] = stroke.widths != null ? stroke.widths[1] : Double.NaN;
+        schedule();
+    }
+
+    private void ensure(int n) {
+        if (size + n > ops.length) ops = Arrays.copyOf(ops, Math.max(ops.length * 2, size + n));
+    }
+
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        AnimationScheduler.get().requestAnimationFrame(timestamp -> post());
+    }
+
+    private void post() {
+        scheduled = false;
+        double start = Metrics.now(); // main thread share only, the worker rasterizes asynchronously
+        Float64Array array = TypedArrays.createFloat64Array(size);
+        for (int i = 0; i < size; i++) array.set(i, ops[i]);
+        Frame frame = new Frame();
+        frame.colors = colors.toArray(new String[0]);
+        frame.ops = array;
+        worker.postMessage(frame, new Object[] { array.buffer() });
+        colors.clear();
+        colorIndex.clear();
+        size = 0;
+        if (predicted) {
+            predicted = false;
+            schedule(); // an empty frame to remove them
+        }
+        Metrics.frame(start);
+    }
+
+    private static native Object transferControlToOffscreen(CanvasElement canvas) /*-{
+        return canvas.transferControlToOffscreen();
+    }-*/;
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL)
+    public static class Worker {
+        public Worker(String url) {}
+        public native void postMessage(Object message, Object[] transfer);
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Init {
+        public Object canvas;
+        public double ratio;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Resize {
+        public double width, height, ratio;
+    }
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    public static class Frame {
+        public String[] colors;
+        public Object ops;
+    }
+}
@@ -0,0 +1,148 @@
+// Rasterizes the draw operations sent by WorkerRenderer into the transferred offscreen canvas.
+var OP_SEGMENT = 1, OP_REGION = 2, OP_REGION_END = 3, OP_PREDICT = 4;
+var SEGMENT = 11; // op, color, width, 3 points, start and end width (NaN if constant)
+var STEP = 4, MAX_STEPS = 16; // keep in sync with Brush
+var canvas, ctx, ratio = 1, underPredictions = [];
+
+onmessage = function (e) {
+    var m = e.data;
+    if (m.canvas) {
+        canvas = m.canvas;
+        ratio = m.ratio;
+        ctx = canvas.getContext('2d');
+        ctx.scale(ratio, ratio);
+    } else if (m.ratio) {
+        resize(m.width, m.height, m.ratio);
+    } else {
+        frame(m.colors, m.ops);
+    }
+};
+
+// resizing clears the canvas and its state, the ops repainting it follow in the next frame
+function resize(width, height, r) {
+    ratio = r;
+    canvas.width = Math.round(width * ratio);
+    canvas.height = Math.round(height * ratio);
+    ctx.scale(ratio, ratio);
+    underPredictions = [];
+}
+
+function frame(colors, ops) {
+    for (var i = 0; i < underPredictions.length; i++) {
+        var under = underPredictions[i];
+        ctx.putImageData(under.data, under.x, under.y);
+    }
+    underPredictions = [];
+
+    var predictions = [];
+    ctx.save();
+    ctx.lineCap = 'round';
+    // constant width segments are stroked, variable width ones filled, grouped by style
+    var color = null, width = NaN, fill = false, open = false;
+    for (var o = 0; o < ops.length;) {
+        var op = ops[o];
+        if (op === OP_SEGMENT) {
+            var variable = !isNaN(ops[o + 9]);
+            if (colors[ops[o + 1]] !== color || variable !== fill || !variable && ops[o + 2] !== width) {
+                if (open) paint(fill);
+                color = colors[ops[o + 1]]; width = ops[o + 2]; fill = variable; open = false;
+                if (fill) ctx.fillStyle = color;
+                else {
+                    ctx.strokeStyle = color;
+                    ctx.lineWidth = width;
+                }
+            }
+            if (!open) { ctx.beginPath(); open = true; }
+            segment(ops, o);
+            o += SEGMENT;
+        } else if (op === OP_PREDICT) {
+            predictions.push(o);
+            o += SEGMENT;
+        } else if (op === OP_REGION) {
+            if (open) { paint(fill); open = false; }
+            ctx.save();
+            if (isNaN(ops[o + 1])) {
+                ctx.setTransform(1, 0, 0, 1, 0, 0);
+                ctx.clearRect(0, 0, canvas.width, canvas.height);
+                ctx.restore();
+                ctx.save();
+            } else {
+                ctx.beginPath();
+                ctx.rect(ops[o + 1], ops[o + 2], ops[o + 3], ops[o + 4]);
+                ctx.clip();
+                ctx.clearRect(ops[o + 1], ops[o + 2], ops[o + 3], ops[o + 4]);
+            }
+            color = null; width = NaN;
+            o += 5;
+        } else if (op === OP_REGION_END) {
+            if (open) { paint(fill); open = false; }
+            ctx.restore();
+            color = null; width = NaN;
+            o += 1;
+        } else {
+            throw new Error('unknown op ' + op + ' at ' + o);
+        }
+    }
+    if (open) paint(fill);
+
+    // provisional ink, the pixels below are restored in the next frame
+    for (var p = 0; p < predictions.length; p++) underPredictions.push(backup(ops, predictions[p]));
+    for (p = 0; p < predictions.length; p++) {
+        var at = predictions[p];
+        fill = !isNaN(ops[at + 9]);
+        ctx.strokeStyle = ctx.fillStyle = colors[ops[at + 1]];
+        ctx.lineWidth = ops[at + 2];
+        ctx.beginPath();
+        segment(ops, at);
+        paint(fill);
+    }
+    ctx.restore();
+}
+
+function paint(fill) {
+    if (fill) ctx.fill();
+    else ctx.stroke();
+}
+
+// the curve, or its outline if the width varies, like Brush.outline
+function segment(ops, o) {
+    var x0 = ops[o + 3], y0 = ops[o + 4], x1 = ops[o + 5], y1 = ops[o + 6], x2 = ops[o + 7], y2 = ops[o + 8];
+    if (isNaN(ops[o + 9])) {
+        ctx.moveTo(x0, y0);
+        ctx.bezierCurveTo(x0, y0, x1, y1, x2, y2);
+        return;
+    }
+    var r0 = ops[o + 9] / 2, r1 = ops[o + 10] / 2;
+    var length = Math.hypot(x1 - x0, y1 - y0) + Math.hypot(x2 - x1, y2 - y1);
+    var n = Math.max(1, Math.min(MAX_STEPS, Math.ceil(length / STEP))), xs = [], ys = [], i;
+    for (i = 0; i <= n; i++) {
+        var t = i / n, u = 1 - t, a = u * u * u + 3 * u * u * t, b = 3 * u * t * t, c = t * t * t;
+        xs.push(a * x0 + b * x1 + c * x2);
+        ys.push(a * y0 + b * y1 + c * y2);
+    }
+    var side = function (i, s) {
+        var r = r0 + (r1 - r0) * i / n, next = Math.min(n, i + 1), prev = Math.max(0, i - 1);
+        var dx = xs[next] - xs[prev], dy = ys[next] - ys[prev], d = Math.hypot(dx, dy), k = d > 0 ? s * r / d : 0;
+        if (s < 0 && i === 0) ctx.moveTo(xs[i] - dy * k, ys[i] + dx * k);
+        else ctx.lineTo(xs[i] - dy * k, ys[i] + dx * k);
+    };
+    if (length > 0) {
+        for (i = 0; i <= n; i++) side(i, -1);
+        for (i = n; i >= 0; i--) side(i, 1);
+        ctx.closePath();
+    }
+    ctx.moveTo(x0 + r0, y0);
+    ctx.arc(x0, y0, r0, 0, 2 * Math.PI);
+    ctx.moveTo(x2 + r1, y2);
+    ctx.arc(x2, y2, r1, 0, 2 * Math.PI);
+}
+
+function backup(ops, at) {
+    var xs = [ops[at + 3], ops[at + 5], ops[at + 7]], ys = [ops[at + 4], ops[at + 6], ops[at + 8]];
+    var pad = ops[at + 2] / 2 + 2;
+    var x = Math.max(0, Math.floor((Math.min.apply(null, xs) - pad) * ratio));
+    var y = Math.max(0, Math.floor((Math.min.apply(null, ys) - pad) * ratio));
+    var w = Math.max(1, Math.ceil((Math.max.apply(null, xs) + pad) * ratio) - x);
+    var h = Math.max(1, Math.ceil((Math.max.apply(null, ys) + pad) * ratio) - y);
+    return { data: ctx.getImageData(x, y, w, h), x: x, y: y };
+}